@@ -0,0 +1,85 @@
+package bguspl.set;
+
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * The time source of a game, and the timed waits of its threads.
+ * <p>
+ * The game threads read the time and wait through the clock rather than through System and Object directly, so a
+ * simulation can run on a VirtualClock that skips over the time in which all the game threads only wait.
+ */
+public interface Clock {
+
+    /**
+     * The system clock.
+     */
+    Clock REAL = new RealClock();
+
+    /**
+     * @return - the current time in milliseconds (as System.currentTimeMillis()).
+     */
+    long currentTimeMillis();
+
+    /**
+     * @return - the current time in nanoseconds, for measuring and ordering only (as System.nanoTime()).
+     */
+    long nanoTime();
+
+    /**
+     * Marks a game thread that is about to start, so the clock knows which threads must be waiting before it may
+     * skip time. Every game thread is started with its task wrapped by this method.
+     *
+     * @param task - the code of the thread.
+     * @return - the code to run on the thread.
+     */
+    Runnable participant(Runnable task);
+
+    /**
+     * Waits on a monitor the caller holds (as monitor.wait(millis)).
+     *
+     * @param monitor - the monitor.
+     * @param millis  - the maximum time to wait, or 0 to wait until notified.
+     */
+    void waitOn(Object monitor, long millis) throws InterruptedException;
+
+    /**
+     * Wakes the threads waiting on a monitor the caller holds (as monitor.notifyAll()).
+     *
+     * @param monitor - the monitor.
+     */
+    void notifyAllOn(Object monitor);
+
+    /**
+     * Waits on a condition of a lock the caller holds (as condition.await(millis, TimeUnit.MILLISECONDS)).
+     *
+     * @param lock      - the lock.
+     * @param condition - a condition of the lock.
+     * @param millis    - the maximum time to wait, or 0 to wait until signalled.
+     */
+    void await(Lock lock, Condition condition, long millis) throws InterruptedException;
+
+    /**
+     * Wakes a thread waiting on a condition of a lock the caller holds (as condition.signal()).
+     *
+     * @param lock      - the lock.
+     * @param condition - a condition of the lock.
+     */
+    void signal(Lock lock, Condition condition);
+
+    /**
+     * Parks the calling thread until it is unparked, the time passes or spuriously (as LockSupport.parkNanos()).
+     * An unpark that comes before the park makes it return at once.
+     *
+     * @param millis - the maximum time to park, or 0 to park until unparked.
+     */
+    void park(long millis) throws InterruptedException;
+
+    /**
+     * Unparks a thread parked by park(), or makes its next park return at once (as LockSupport.unpark()).
+     * It takes no game lock, so it never blocks on the game threads.
+     *
+     * @param thread - the thread.
+     */
+    void unpark(Thread thread);
+}
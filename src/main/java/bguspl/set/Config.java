@@ -21,6 +21,17 @@ public class Config {
     public final long randomSpinMin;
     public final long randomSpinMax;
 
+    /**
+     * The seed of the dealer's random choices (0 picks a different seed for every game)
+     */
+    public final long randomSeed;
+
+    /**
+     * True iff the game runs on a virtual clock, which skips the time in which all the game threads wait (for
+     * simulations with computer players only)
+     */
+    public final boolean virtualClock;
+
     /**
      * The number of features on the cards (e.g. shape, color etc.)
      */
@@ -36,6 +47,11 @@ public class Config {
      */
     public final int deckSize;
 
+    /**
+     * True iff the deck is too large to keep a list, an image or a table entry per card (see FeatureCount)
+     */
+    public final boolean hugeDeck;
+
     /**
      * The number of human players in the game.
      */
@@ -77,7 +93,7 @@ public class Config {
     public final long pointFreezeMillis;
 
     /**
-     * The number of milliseconds to delay before removing/placing a card on the table
+     * The number of milliseconds the display waits before showing each removal/placement of cards on the table
      */
     public final long tableDelayMillis;
 
@@ -86,6 +102,27 @@ public class Config {
      */
     public final long endGamePauseMillies;
 
+    /**
+     * The maximum number of events to record in the binary game journal (0 turns the journal off)
+     */
+    public final int journalCapacity;
+
+    /**
+     * The port on which remote players can join the game (0 for any free port, -1 turns remote players off)
+     */
+    public final int serverPort;
+
+    /**
+     * The address on which remote players can join the game (the loopback address by default, 0.0.0.0 accepts players
+     * from any host)
+     */
+    public final String serverAddress;
+
+    /**
+     * The port on which spectators can watch the game (0 for any free port, -1 turns spectators off)
+     */
+    public final int spectatorPort;
+
     /**
      * The names of the players to display on the screen
      * Note: if there are more players than names, the remaining players will be called "Player 3", "Player 4", etc.
@@ -155,7 +192,7 @@ public class Config {
      * @param filename - the name of the configuration file.
      * @return - a properties object with the configuration file contents.
      */
-    private static Properties loadProperties(String filename, Logger logger) {
+    static Properties loadProperties(String filename, Logger logger) {
 
         Properties properties = new Properties();
 
@@ -193,15 +230,21 @@ public class Config {
         if (randomSpinMax < randomSpinMin || randomSpinMin < 0)
             logger.severe("invalid random spin cycles: max: " + randomSpinMax + " min: " + randomSpinMin);
 
+        randomSeed = Long.parseLong(properties.getProperty("RandomSeed", "0"));
+        virtualClock = Boolean.parseBoolean(properties.getProperty("VirtualClock", "False"));
+
         // cards settings
         featureSize = Integer.parseInt(properties.getProperty("FeatureSize", "3"));
         featureCount = Integer.parseInt(properties.getProperty("FeatureCount", "4"));
         deckSize = (int) Math.pow(featureSize, featureCount);
+        hugeDeck = Boolean.parseBoolean(properties.getProperty("HugeDeck", "False"));
 
         // gameplay settings
         humanPlayers = Integer.parseInt(properties.getProperty("HumanPlayers", "2"));
         computerPlayers = Integer.parseInt(properties.getProperty("ComputerPlayers", "0"));
         players = humanPlayers + computerPlayers;
+        if (virtualClock && humanPlayers > 0)
+            logger.severe("warning: a virtual clock does not wait for the human players");
 
         hints = Boolean.parseBoolean(properties.getProperty("Hints", "False"));
         turnTimeoutMillis = (long) (Double.parseDouble(properties.getProperty("TurnTimeoutSeconds", "60")) * 1000.0);
@@ -210,6 +253,10 @@ public class Config {
         penaltyFreezeMillis = (long) (Double.parseDouble(properties.getProperty("PenaltyFreezeSeconds", "3")) * 1000.0);
         tableDelayMillis = (long) (Double.parseDouble(properties.getProperty("TableDelaySeconds", "0.1")) * 1000.0);
         endGamePauseMillies = (long) (Double.parseDouble(properties.getProperty("EndGamePauseSeconds", "5")) * 1000.0);
+        journalCapacity = Integer.parseInt(properties.getProperty("JournalCapacity", "0"));
+        serverPort = Integer.parseInt(properties.getProperty("ServerPort", "-1"));
+        serverAddress = properties.getProperty("ServerAddress", "127.0.0.1").trim();
+        spectatorPort = Integer.parseInt(properties.getProperty("SpectatorPort", "-1"));
 
         // ui settings
         String[] names = properties.getProperty("PlayerNames", "Player 1, Player 2").split(",");
@@ -219,6 +266,11 @@ public class Config {
         rows = Integer.parseInt(properties.getProperty("Rows", "3"));
         columns = Integer.parseInt(properties.getProperty("Columns", "4"));
         tableSize = rows * columns;
+        if (tableSize > Long.SIZE) { // the players keep their selected slots in a long
+            String message = "invalid table size: " + tableSize + " slots, at most " + Long.SIZE + " are supported";
+            logger.severe(message);
+            throw new IllegalArgumentException(message);
+        }
         cellWidth = Integer.parseInt(properties.getProperty("CellWidth", "258"));
         cellHeight = Integer.parseInt(properties.getProperty("CellHeight", "167"));
         playerCellWidth = Integer.parseInt(properties.getProperty("PlayerCellWidth", "300"));
@@ -8,11 +8,29 @@ public class Env {
     public final Config config;
     public final UserInterface ui;
     public final Util util;
+    public final Journal journal;
+    public final RandomSource random;
+    public final GameThreads threads;
+    public final Clock clock;
 
     public Env(Logger logger, Config config, UserInterface ui, Util util) {
+        this(logger, config, ui, util, Journal.DISABLED, new RandomSource(config), new GameThreads());
+    }
+
+    public Env(Logger logger, Config config, UserInterface ui, Util util, Journal journal, RandomSource random,
+               GameThreads threads) {
+        this(logger, config, ui, util, journal, random, threads, Clock.REAL);
+    }
+
+    public Env(Logger logger, Config config, UserInterface ui, Util util, Journal journal, RandomSource random,
+               GameThreads threads, Clock clock) {
         this.logger = logger;
         this.config = config;
         this.ui = ui;
         this.util = util;
+        this.journal = journal;
+        this.random = random;
+        this.threads = threads;
+        this.clock = clock;
     }
 }
@@ -0,0 +1,136 @@
+package bguspl.set;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Starts the threads of a game, either as dedicated threads or as tasks of a pool shared by many games.
+ * <p>
+ * A pooled thread does not end when its task ends, so game threads are joined through the Task handle returned by
+ * start() rather than through Thread.join().
+ */
+public class GameThreads {
+
+    /**
+     * The shared pool, or null for dedicated threads.
+     */
+    private final ExecutorService pool;
+
+    /**
+     * Starts every task on a dedicated thread.
+     */
+    public GameThreads() {
+        this(null);
+    }
+
+    /**
+     * @param pool - the pool to run the tasks on (must be able to run all the blocking game threads at once).
+     */
+    public GameThreads(ExecutorService pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * A running (or finished) game thread.
+     */
+    public static class Task {
+
+        private final String name;
+        private final CountDownLatch done = new CountDownLatch(1);
+
+        /**
+         * The thread running the task, or null before it starts and after it ends.
+         */
+        private Thread thread;
+
+        /**
+         * The System.nanoTime() at which the task ended (valid once isDone()).
+         */
+        private volatile long endNanos;
+
+        private Task(String name) {
+            this.name = name;
+        }
+
+        public String name() {
+            return name;
+        }
+
+        /**
+         * Waits until the task ends.
+         */
+        public void join() throws InterruptedException {
+            done.await();
+        }
+
+        /**
+         * Waits until the task ends or the timeout passes.
+         *
+         * @param millis - the maximum time to wait.
+         * @return - true iff the task has ended.
+         */
+        public boolean join(long millis) throws InterruptedException {
+            return done.await(millis, TimeUnit.MILLISECONDS);
+        }
+
+        /**
+         * @return - true iff the task has ended.
+         */
+        public boolean isDone() {
+            return done.getCount() == 0;
+        }
+
+        /**
+         * @return - the System.nanoTime() at which the task ended.
+         * @pre - isDone()
+         */
+        public long endNanos() {
+            return endNanos;
+        }
+
+        /**
+         * Interrupts the thread running the task (a pooled thread is not interrupted once it moved on).
+         */
+        public synchronized void interrupt() {
+            if (thread != null)
+                thread.interrupt();
+        }
+
+        private void run(Runnable runnable) {
+            Thread current = Thread.currentThread();
+            String poolName = current.getName();
+            current.setName(name);
+            synchronized (this) {
+                thread = current;
+            }
+            try {
+                runnable.run();
+            } finally {
+                synchronized (this) {
+                    thread = null;
+                }
+                Thread.interrupted(); // do not leak an interrupt to the next task of a pooled thread
+                current.setName(poolName);
+                endNanos = System.nanoTime();
+                done.countDown();
+            }
+        }
+    }
+
+    /**
+     * Starts a game thread.
+     *
+     * @param runnable - the code of the thread.
+     * @param name     - the name of the thread.
+     * @return - the handle of the running thread.
+     */
+    public Task start(Runnable runnable, String name) {
+        Task task = new Task(name);
+        if (pool == null)
+            new Thread(() -> task.run(runnable), name).start();
+        else
+            pool.execute(() -> task.run(runnable));
+        return task;
+    }
+}
@@ -0,0 +1,339 @@
+package bguspl.set;
+
+import bguspl.set.ex.Dealer;
+import bguspl.set.ex.GamePhase;
+import bguspl.set.ex.Player;
+import bguspl.set.ex.Table;
+
+import java.awt.EventQueue;
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Logger;
+
+/**
+ * Drives the human players' input path under load, to find the input rate at which the game saturates.
+ * <p>
+ * One thread plays the keyboards: it injects the key presses of every human player at a given rate and distribution,
+ * and each press is dispatched on the Swing event thread through an InputManager with the game's key map, as a real
+ * key event would be. A press is dropped if the player does not queue it (e.g. while frozen or with a full queue);
+ * the key-to-token latency of a queued press is the time from its injection until its token is placed or removed.
+ * Queued presses that never move a token (e.g. cleared by a verdict) are counted as ignored. Games are played one after
+ * the other until the run time is over.
+ */
+public class InputLoadGenerator {
+
+    /**
+     * How the presses of a player are spread in time.
+     */
+    public enum Distribution {
+        /**
+         * At fixed intervals.
+         */
+        UNIFORM,
+        /**
+         * At exponentially distributed intervals (a Poisson process).
+         */
+        POISSON,
+        /**
+         * In bursts of featureSize presses, like a player picking a set, at fixed intervals between the bursts.
+         */
+        BURST
+    }
+
+    /**
+     * Matches the token updates of the game to the injected presses.
+     * <p>
+     * A player thread handles its presses in the order they were queued, so a token update of a player belongs to the
+     * player's earliest pending press on that slot, and the pending presses before it moved no token.
+     */
+    private static class TokenTracker extends UserInterfaceHeadless {
+
+        /**
+         * The queued presses of each player that did not move a token yet: the slot and the injection time.
+         */
+        private final List<ArrayDeque<long[]>> pending = new ArrayList<>();
+
+        private final List<Long> latencies = new ArrayList<>();
+        private long ignored;
+
+        TokenTracker(int players) {
+            for (int i = 0; i < players; i++)
+                pending.add(new ArrayDeque<>());
+        }
+
+        /**
+         * Adds a press about to be dispatched (before it can move a token).
+         */
+        void pressed(int player, int slot, long injected) {
+            ArrayDeque<long[]> presses = pending.get(player);
+            synchronized (presses) {
+                presses.add(new long[]{slot, injected});
+            }
+        }
+
+        /**
+         * Takes back the last press of a player, which the player did not queue.
+         */
+        void dropped(int player) {
+            ArrayDeque<long[]> presses = pending.get(player);
+            synchronized (presses) {
+                presses.pollLast();
+            }
+        }
+
+        @Override
+        public void placeToken(int player, int slot) {
+            tokenMoved(player, slot);
+        }
+
+        @Override
+        public void removeToken(int player, int slot) {
+            tokenMoved(player, slot);
+        }
+
+        private void tokenMoved(int player, int slot) {
+            long now = System.nanoTime();
+            long skipped = 0;
+            long latency = -1;
+            ArrayDeque<long[]> presses = pending.get(player);
+            synchronized (presses) {
+                long[] press;
+                while ((press = presses.poll()) != null) {
+                    if (press[0] == slot) {
+                        latency = now - press[1];
+                        break;
+                    }
+                    skipped++;
+                }
+            }
+            synchronized (this) {
+                ignored += skipped;
+                if (latency >= 0)
+                    latencies.add(latency);
+            }
+        }
+
+        /**
+         * @return - the number of queued presses that did not move a token, counting those still pending.
+         */
+        synchronized long ignored() {
+            long count = ignored;
+            for (ArrayDeque<long[]> presses : pending) {
+                synchronized (presses) {
+                    count += presses.size();
+                }
+            }
+            return count;
+        }
+    }
+
+    private final Logger logger;
+    private final Config config;
+    private final double pressesPerSecond;
+    private final Distribution distribution;
+    private final long runNanos;
+
+    private final ExecutorService pool = Executors.newCachedThreadPool();
+    private final GameThreads threads = new GameThreads(pool);
+
+    /**
+     * The results of the run (counted by the event thread, read after the last game).
+     */
+    private long injected;
+    private long accepted;
+    private long dropped;
+    private long ignored;
+    private long games;
+    private long gameNanos;
+    private final List<Long> latencies = new ArrayList<>();
+
+    /**
+     * The class constructor.
+     *
+     * @param logger           - the logger of the games.
+     * @param config           - the configuration of the games (all its players are human).
+     * @param pressesPerSecond - the key presses each player makes per second.
+     * @param distribution     - how the presses of a player are spread in time.
+     * @param runMillis        - the time to play games for.
+     */
+    public InputLoadGenerator(Logger logger, Config config, double pressesPerSecond, Distribution distribution,
+                              long runMillis) {
+        this.logger = logger;
+        this.config = config;
+        this.pressesPerSecond = pressesPerSecond;
+        this.distribution = distribution;
+        this.runNanos = TimeUnit.MILLISECONDS.toNanos(runMillis);
+    }
+
+    /**
+     * Plays games until the run time is over.
+     *
+     * @return - a one line summary of the run.
+     */
+    public String run() throws InterruptedException {
+        long end = System.nanoTime() + runNanos;
+        for (long seed = 1; System.nanoTime() < end; seed++)
+            play(seed, end);
+        pool.shutdown();
+        return summary();
+    }
+
+    /**
+     * Plays a single game while injecting the presses, until it ends or the run time is over.
+     */
+    private void play(long seed, long end) throws InterruptedException {
+        RandomSource random = new RandomSource(config.randomSeed != 0 ? config.randomSeed + seed : seed);
+        TokenTracker tracker = new TokenTracker(config.players);
+        Env env = new Env(logger, config, tracker, new UtilImpl(config, random), Journal.DISABLED, random, threads);
+        Table table = new Table(env);
+        Player[] players = new Player[config.players];
+        Dealer dealer = new Dealer(env, table, players);
+        for (int i = 0; i < players.length; i++)
+            players[i] = new Player(env, dealer, table, i, true);
+        InputManager input = new InputManager(logger, config, players);
+        SplittableRandom keys = random.split();
+
+        Thread dealerThread = new Thread(dealer, "dealer");
+        long start = System.nanoTime();
+        dealerThread.start();
+        dealer.phase.await(GamePhase.OPEN, GamePhase.FINISHED); // the players are ready
+
+        long[] next = new long[players.length];
+        int[] burst = new int[players.length];
+        for (int i = 0; i < players.length; i++)
+            next[i] = start + interval(keys, burst, i);
+        while (!dealer.phase.is(GamePhase.FINISHED) && System.nanoTime() < end) {
+            int player = 0;
+            for (int i = 1; i < players.length; i++) {
+                if (next[i] < next[player])
+                    player = i;
+            }
+            long wait = next[player] - System.nanoTime();
+            if (wait > 0)
+                LockSupport.parkNanos(wait);
+            int[] playerKeys = config.playerKeys(player);
+            int slot = keys.nextInt(playerKeys.length);
+            inject(input, tracker, player, slot, playerKeys[slot]);
+            next[player] += interval(keys, burst, player);
+        }
+        long elapsed = System.nanoTime() - start;
+        dealer.terminate();
+        dealerThread.join();
+
+        try {
+            EventQueue.invokeAndWait(() -> { // after the last injected press was dispatched
+                games++;
+                gameNanos += elapsed;
+                ignored += tracker.ignored();
+                synchronized (tracker) {
+                    latencies.addAll(tracker.latencies);
+                }
+            });
+        } catch (InvocationTargetException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Injects a key press: it is dispatched on the event thread through the key map, as a key event would be.
+     */
+    private void inject(InputManager input, TokenTracker tracker, int player, int slot, int keyCode) {
+        long time = System.nanoTime();
+        EventQueue.invokeLater(() -> {
+            injected++;
+            tracker.pressed(player, slot, time);
+            if (input.dispatch(keyCode)) {
+                accepted++;
+            } else {
+                tracker.dropped(player);
+                dropped++;
+            }
+        });
+    }
+
+    /**
+     * @return - the time until a player's next press, in nanoseconds.
+     */
+    private long interval(SplittableRandom random, int[] burst, int player) {
+        double mean = 1e9 / pressesPerSecond;
+        switch (distribution) {
+            case POISSON:
+                return (long) (-Math.log(1 - random.nextDouble()) * mean);
+            case BURST:
+                if (++burst[player] < config.featureSize)
+                    return 0;
+                burst[player] = 0;
+                return (long) (mean * config.featureSize);
+            default:
+                return (long) mean;
+        }
+    }
+
+    /**
+     * @return - a one line summary of the run.
+     */
+    private String summary() {
+        long[] sorted = latencies.stream().mapToLong(Long::longValue).sorted().toArray();
+        double seconds = gameNanos / 1e9;
+        return String.format(Locale.ROOT, "%d players at %.0f presses/sec each (%s): %d games in %.2f s, "
+                        + "%d presses (%.0f/sec), %d accepted (%.0f/sec), %d dropped, %d ignored, "
+                        + "key-to-token p50 %.1f us p90 %.1f us p99 %.1f us max %.1f us",
+                config.players, pressesPerSecond, distribution.name().toLowerCase(Locale.ROOT), games, seconds,
+                injected, injected / seconds, accepted, accepted / seconds, dropped, ignored,
+                percentile(sorted, 0.5), percentile(sorted, 0.9), percentile(sorted, 0.99), percentile(sorted, 1));
+    }
+
+    /**
+     * @return - the given percentile of sorted latencies, in microseconds.
+     */
+    private static double percentile(long[] sorted, double percentile) {
+        if (sorted.length == 0)
+            return 0;
+        int index = (int) Math.ceil(percentile * sorted.length) - 1;
+        return sorted[Math.max(index, 0)] / 1e3;
+    }
+
+    /**
+     * Runs the load for every rate. All the players of the configuration play as human players.
+     *
+     * @param args - the rates (comma separated key presses per second of each player), and optionally the
+     *             distribution (uniform, poisson or burst), the seconds to run each rate for and the configuration file.
+     */
+    public static void main(String[] args) throws InterruptedException {
+        if (args.length < 1) {
+            System.out.println("usage: InputLoadGenerator <presses/sec per player,...> [uniform|poisson|burst] "
+                    + "[seconds] [config file]");
+            return;
+        }
+        if (System.getProperty("java.awt.headless") == null)
+            System.setProperty("java.awt.headless", "true"); // only the event thread is needed
+        Logger logger = Logger.getLogger("SetInputLoadLogger");
+        logger.setUseParentHandlers(false);
+
+        Properties properties = Config.loadProperties(args.length > 3 ? args[3] : "config.properties", logger);
+        int players = Integer.parseInt(properties.getProperty("HumanPlayers", "2"))
+                + Integer.parseInt(properties.getProperty("ComputerPlayers", "0"));
+        properties.setProperty("HumanPlayers", Integer.toString(players));
+        properties.setProperty("ComputerPlayers", "0");
+        properties.setProperty("Hints", "False");
+        properties.setProperty("LogLevel", "OFF");
+        properties.setProperty("VirtualClock", "False");
+        Config config = new Config(logger, properties);
+
+        Distribution distribution = args.length > 1
+                ? Distribution.valueOf(args[1].toUpperCase(Locale.ROOT)) : Distribution.UNIFORM;
+        long runMillis = (long) ((args.length > 2 ? Double.parseDouble(args[2]) : 5) * 1000);
+        for (String rate : args[0].split(","))
+            System.out.println(new InputLoadGenerator(logger, config, Double.parseDouble(rate.trim()), distribution,
+                    runMillis).run());
+    }
+}
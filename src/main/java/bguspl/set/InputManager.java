@@ -5,6 +5,7 @@ import bguspl.set.ex.Player;
 import java.awt.event.KeyAdapter;
 import java.awt.event.KeyEvent;
 import java.util.Arrays;
+import java.util.function.IntPredicate;
 import java.util.logging.Logger;
 
 /**
@@ -18,9 +19,22 @@ class InputManager extends KeyAdapter {
     int[] keyToSlot = new int[MAX_KEY_CODE + 1];
     private final Logger logger;
 
+    /**
+     * Tells whether the display shows the card in a slot, so a press on a card the player cannot see yet is ignored.
+     */
+    private final IntPredicate shown;
+
     public InputManager(Logger logger, Config config, Player[] players) {
+        this(logger, config, players, slot -> true);
+    }
+
+    /**
+     * @param shown - true for a slot iff the display shows its current card.
+     */
+    public InputManager(Logger logger, Config config, Player[] players, IntPredicate shown) {
         this.players = players;
         this.logger = logger;
+        this.shown = shown;
 
         // initialize the keys
         for (int player = 0; player < config.players; ++player)
@@ -39,12 +53,27 @@ class InputManager extends KeyAdapter {
 
     @Override
     public void keyPressed(KeyEvent e) {
-        // dispatch the key event to the player according to the key map
-        int keyCode = e.getKeyCode();
-        int player = keyMap[keyCode] - 1;
+        dispatch(e.getKeyCode());
+    }
+
+    /**
+     * Dispatches a key press to the player according to the key map.
+     * It does not block on the game threads: the player only queues the press for its own thread.
+     *
+     * @param keyCode - the code of the pressed key.
+     * @return - true iff the key belongs to a player and the player accepted the press.
+     */
+    boolean dispatch(int keyCode) {
+        int player = keyCode < keyMap.length ? keyMap[keyCode] - 1 : -1;
         if (player >= 0){
             logger.severe("key " + keyCode + " was pressed by player " + (player + 1));
-            players[player].keyPressed(keyToSlot[keyCode]);
+            int slot = keyToSlot[keyCode];
+            if (!shown.test(slot)) { // the card the player saw is not the card on the table
+                logger.severe("ignoring the press on slot " + slot + ", its card is not shown yet");
+                return false;
+            }
+            return players[player].keyPressed(slot);
         }
+        return false;
     }
 }
@@ -0,0 +1,295 @@
+package bguspl.set;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * A compact binary journal of game events, written to a memory-mapped append-only file.
+ * <p>
+ * The file starts with a fixed size header followed by fixed size records:
+ * <pre>
+ * header: magic(4) version(4) count(4) recordSize(4) startNanos(8)
+ *         featureSize(4) featureCount(4) rows(4) columns(4) players(4) turnTimeoutMillis(8) hugeDeck(4) reserved(8)
+ * record: nanoTime(8) threadId(8) event(4) a(4) b(4) c(4)
+ * </pre>
+ * Every record is stamped with the game's clock, so the times of all the records (and of the header) share one time base
+ * also when the game runs on a virtual clock.
+ * Every recording thread reserves its own record with a single atomic increment and then writes it directly into the
+ * mapped region, so there is exactly one writer per record and no lock on the recording path.
+ * When the journal is full, further events are counted as dropped instead of blocking the game. A full journal stops
+ * reserving records, so the record index never passes the capacity by more than the number of threads recording at
+ * that moment and cannot overflow however long the game runs.
+ */
+public class Journal {
+
+    /**
+     * The kinds of events that are recorded. The meaning of the a, b, c record fields is given per event.
+     */
+    public enum Event {
+        NONE,          // marks the end of the written records
+        CARD_PLACED,   // a = card, b = slot
+        CARD_REMOVED,  // a = card, b = slot
+        TOKEN_PLACED,  // a = player, b = slot
+        TOKEN_REMOVED, // a = player, b = slot
+        CLAIM,         // a = player, b = low 32 bits of the slots mask, c = high 32 bits of the slots mask
+                       // (recorded when the dealer receives the claim, with the time the player completed it)
+        VERDICT,       // a = player, b = verdict (see VERDICT_* constants)
+        FREEZE,        // a = player, b = freeze milliseconds
+        RESHUFFLE,     // a = cards left in the deck
+        SEED           // a = low 32 bits of the dealer's random seed, b = high 32 bits of the seed
+    }
+
+    /**
+     * A single event read back from a journal file.
+     */
+    public static class Record {
+
+        public final long nanoTime;
+        public final long threadId;
+        public final Event event;
+        public final int a;
+        public final int b;
+        public final int c;
+
+        Record(long nanoTime, long threadId, Event event, int a, int b, int c) {
+            this.nanoTime = nanoTime;
+            this.threadId = threadId;
+            this.event = event;
+            this.a = a;
+            this.b = b;
+            this.c = c;
+        }
+    }
+
+    /**
+     * The contents of a journal file: the game dimensions from the header and the recorded events.
+     */
+    public static class Recording {
+
+        public final int featureSize;
+        public final int featureCount;
+        public final int rows;
+        public final int columns;
+        public final int players;
+        public final long turnTimeoutMillis;
+        public final boolean hugeDeck;
+        public final List<Record> records;
+
+        Recording(int featureSize, int featureCount, int rows, int columns, int players, long turnTimeoutMillis,
+                  boolean hugeDeck, List<Record> records) {
+            this.featureSize = featureSize;
+            this.featureCount = featureCount;
+            this.rows = rows;
+            this.columns = columns;
+            this.players = players;
+            this.turnTimeoutMillis = turnTimeoutMillis;
+            this.hugeDeck = hugeDeck;
+            this.records = records;
+        }
+    }
+
+    public static final int VERDICT_DISCARDED = 0;
+    public static final int VERDICT_PENALTY = 1;
+    public static final int VERDICT_POINT = 2;
+
+    public static final int MAGIC = 0x5345544a; // "SETJ"
+    public static final int VERSION = 2;
+    public static final int HEADER_SIZE = 64;
+    public static final int RECORD_SIZE = 32;
+
+    /**
+     * The largest capacity whose records fit in a single mapped region.
+     */
+    public static final int MAX_CAPACITY = (Integer.MAX_VALUE - HEADER_SIZE) / RECORD_SIZE;
+
+    private static final int COUNT_OFFSET = 8;
+
+    /**
+     * A journal that records nothing (used when journaling is turned off).
+     */
+    public static final Journal DISABLED = new Journal();
+
+    private static final Event[] EVENTS = Event.values();
+
+    private final MappedByteBuffer buffer;
+    private final FileChannel channel;
+    private final int capacity;
+    private final AtomicInteger next = new AtomicInteger();
+    private final AtomicLong dropped = new AtomicLong();
+    private final Clock clock;
+
+    private Journal() {
+        buffer = null;
+        channel = null;
+        capacity = 0;
+        clock = Clock.REAL;
+    }
+
+    /**
+     * Creates (or truncates) the journal file and maps it to memory.
+     *
+     * @param file   - the journal file.
+     * @param config - the game configuration (config.journalCapacity is the maximum number of events to record, up to
+     *               MAX_CAPACITY).
+     * @param clock  - the game's clock, which stamps the records.
+     * @throws IOException - if the file cannot be created or mapped.
+     */
+    public Journal(Path file, Config config, Clock clock) throws IOException {
+        this.clock = clock;
+        this.capacity = Math.min(config.journalCapacity, MAX_CAPACITY);
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) capacity * RECORD_SIZE);
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, VERSION);
+        buffer.putInt(COUNT_OFFSET, 0);
+        buffer.putInt(12, RECORD_SIZE);
+        buffer.putLong(16, clock.nanoTime());
+        buffer.putInt(24, config.featureSize);
+        buffer.putInt(28, config.featureCount);
+        buffer.putInt(32, config.rows);
+        buffer.putInt(36, config.columns);
+        buffer.putInt(40, config.players);
+        buffer.putLong(44, config.turnTimeoutMillis);
+        buffer.putInt(52, config.hugeDeck ? 1 : 0);
+    }
+
+    /**
+     * Opens a journal according to the configuration, or returns the disabled journal if journaling is turned off
+     * or the file cannot be created.
+     *
+     * @param logger - the logger to report errors to.
+     * @param config - the game configuration.
+     * @param file   - the journal file.
+     * @param clock  - the game's clock, which stamps the records.
+     * @return - the journal.
+     */
+    public static Journal open(Logger logger, Config config, Path file, Clock clock) {
+        if (config.journalCapacity <= 0) return DISABLED;
+        try {
+            return new Journal(file, config, clock);
+        } catch (IOException e) {
+            logger.severe("cannot create journal file " + file + ": " + e.getMessage());
+            return DISABLED;
+        }
+    }
+
+    /**
+     * @return - true iff events are actually recorded.
+     */
+    public boolean enabled() {
+        return buffer != null;
+    }
+
+    /**
+     * Records an event with the current time and thread.
+     *
+     * @param event - the event type.
+     * @param a     - the first event field.
+     * @param b     - the second event field.
+     * @param c     - the third event field.
+     */
+    public void record(Event event, int a, int b, int c) {
+        record(clock.nanoTime(), event, a, b, c);
+    }
+
+    /**
+     * Records an event that happened at an earlier time, in the current thread.
+     *
+     * @param nanoTime - the time of the event, by the clock of the journal.
+     * @param event    - the event type.
+     * @param a        - the first event field.
+     * @param b        - the second event field.
+     * @param c        - the third event field.
+     */
+    public void record(long nanoTime, Event event, int a, int b, int c) {
+        if (buffer == null) return;
+        int index = next.get() < capacity ? next.getAndIncrement() : capacity; // no reservations once full
+        if (index >= capacity) {
+            dropped.incrementAndGet();
+            return;
+        }
+        int position = HEADER_SIZE + index * RECORD_SIZE;
+        buffer.putLong(position, nanoTime);
+        buffer.putLong(position + 8, Thread.currentThread().getId());
+        buffer.putInt(position + 20, a);
+        buffer.putInt(position + 24, b);
+        buffer.putInt(position + 28, c);
+        buffer.putInt(position + 16, event.ordinal());
+    }
+
+    public void record(Event event, int a, int b) {
+        record(event, a, b, 0);
+    }
+
+    public void record(Event event, int a) {
+        record(event, a, 0, 0);
+    }
+
+    /**
+     * @return - the number of events that were not recorded because the journal was full.
+     */
+    public long dropped() {
+        return dropped.get();
+    }
+
+    /**
+     * Writes the number of recorded events to the header and flushes the journal to the disk.
+     */
+    public void close() {
+        if (buffer == null) return;
+        buffer.putInt(COUNT_OFFSET, Math.min(next.get(), capacity));
+        buffer.force();
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    /**
+     * Reads a journal file that was written (and closed) by a previous game.
+     *
+     * @param file - the journal file.
+     * @return - the recorded game.
+     * @throws IOException - if the file cannot be read or is not a journal file.
+     */
+    public static Recording read(Path file) throws IOException {
+        ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(file));
+        if (in.limit() < HEADER_SIZE || in.getInt(0) != MAGIC || in.getInt(4) != VERSION)
+            throw new IOException(file + " is not a game journal");
+        int count = in.getInt(COUNT_OFFSET);
+        if (count == 0) // the game did not close the journal, read until the first empty record
+            count = (in.limit() - HEADER_SIZE) / RECORD_SIZE;
+        List<Record> records = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int position = HEADER_SIZE + i * RECORD_SIZE;
+            Event event = event(in.getInt(position + 16));
+            if (event == Event.NONE)
+                break;
+            records.add(new Record(in.getLong(position), in.getLong(position + 8), event,
+                    in.getInt(position + 20), in.getInt(position + 24), in.getInt(position + 28)));
+        }
+        return new Recording(in.getInt(24), in.getInt(28), in.getInt(32), in.getInt(36), in.getInt(40), in.getLong(44),
+                in.getInt(52) != 0, records);
+    }
+
+    /**
+     * Converts an event code read from a journal file to an event.
+     *
+     * @param code - the event code.
+     * @return - the event, or NONE for an unknown code.
+     */
+    public static Event event(int code) {
+        return code > 0 && code < EVENTS.length ? EVENTS[code] : Event.NONE;
+    }
+}
@@ -6,6 +6,7 @@ import bguspl.set.ex.Table;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Paths;
 import java.text.SimpleDateFormat;
 import java.util.Arrays;
 import java.util.Calendar;
@@ -23,6 +24,11 @@ public class Main {
     private static boolean xButtonPressed = false;
     private static Logger logger;
 
+    /**
+     * The start time of the game, used for naming the log and journal files.
+     */
+    private static final String startTime = new SimpleDateFormat("M-d_HH-mm-ss").format(Calendar.getInstance().getTime());
+
     public static void xButtonPressed() throws InterruptedException {
         if (logger != null) logger.severe("exit button pressed");
         xButtonPressed = true;
@@ -43,7 +49,8 @@ public class Main {
         logger = initLogger();
         ThreadLogger.logStart(logger, Thread.currentThread().getName());
         Config config = new Config(logger, "config.properties");
-        Util util = new UtilImpl(config);
+        RandomSource random = new RandomSource(config);
+        Util util = new UtilImpl(config, random);
 
         Player[] players = new Player[config.players];
         UserInterface ui = null;
@@ -55,9 +62,25 @@ public class Main {
             if (config.humanPlayers > 0)
                 logger.severe("warning: running with human players with no user interface");
         }
+        if (config.serverPort >= 0) {
+            try {
+                ui = new UserInterfaceComposite(ui, new RemotePlayerServer(logger, config, players));
+            } catch (IOException e) {
+                logger.severe("error creating remote players server: " + e.getMessage());
+            }
+        }
+        if (config.spectatorPort >= 0) {
+            try {
+                ui = new UserInterfaceComposite(ui, new SpectatorBroadcaster(logger, config));
+            } catch (IOException e) {
+                logger.severe("error creating spectator broadcast: " + e.getMessage());
+            }
+        }
         ui = new UserInterfaceDecorator(logger, util, ui);
 
-        Env env = new Env(logger, config, ui, util);
+        Clock clock = config.virtualClock ? new VirtualClock() : Clock.REAL;
+        Journal journal = Journal.open(logger, config, Paths.get("./logs/" + startTime + ".journal"), clock);
+        Env env = new Env(logger, config, ui, util, journal, random, new GameThreads(), clock);
 
         // create the game entities
         Table table = new Table(env);
@@ -66,7 +89,7 @@ public class Main {
             players[i] = new Player(env, dealer, table, i, i < env.config.humanPlayers);
 
         // start the dealer thread
-        ThreadLogger dealerThread = new ThreadLogger(dealer, "dealer", logger);
+        ThreadLogger dealerThread = new ThreadLogger(env.clock.participant(dealer), "dealer", logger);
         dealerThread.startWithLog();
 
         try {
@@ -79,6 +102,8 @@ public class Main {
             System.out.println("Thanks for playing... it was fun!");
             ThreadLogger.logStop(logger, Thread.currentThread().getName());
             if (!xButtonPressed) env.ui.dispose();
+            if (journal.dropped() > 0) logger.severe("journal was full, " + journal.dropped() + " events were dropped");
+            journal.close();
             for (Handler h : logger.getHandlers()) h.flush();
         }
     }
@@ -86,12 +111,11 @@ public class Main {
     private static Logger initLogger() {
 
         //just to make our log file nicer :)
-        SimpleDateFormat format = new SimpleDateFormat("M-d_HH-mm-ss");
         FileHandler handler;
         try {
             //noinspection ResultOfMethodCallIgnored
             new File("./logs/").mkdirs();
-            handler = new FileHandler("./logs/" + format.format(Calendar.getInstance().getTime()) + ".log");
+            handler = new FileHandler("./logs/" + startTime + ".log");
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
@@ -0,0 +1,82 @@
+package bguspl.set;
+
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * The source of all the random choices of a single game.
+ * <p>
+ * The game has one seed, from which independent streams are split for every thread that needs random numbers, so
+ * threads never contend on a shared generator, and a game created with the same seed (and splitting its streams in the
+ * same order) makes the same random choices.
+ */
+public class RandomSource {
+
+    /**
+     * The seed of the game.
+     */
+    private final long seed;
+
+    /**
+     * The generator that all the streams are split from.
+     */
+    private final SplittableRandom root;
+
+    /**
+     * The stream of each thread that asked for one with current() (split on first use).
+     */
+    private final ThreadLocal<SplittableRandom> streams = ThreadLocal.withInitial(this::split);
+
+    /**
+     * The class constructor.
+     *
+     * @param seed - the seed of the game.
+     */
+    public RandomSource(long seed) {
+        this.seed = seed;
+        this.root = new SplittableRandom(seed);
+    }
+
+    /**
+     * Creates the random source of a game according to the configuration.
+     *
+     * @param config - the game configuration (config.randomSeed == 0 picks a different seed for every game).
+     */
+    public RandomSource(Config config) {
+        this(config.randomSeed != 0 ? config.randomSeed : System.nanoTime());
+    }
+
+    /**
+     * @return - the seed of the game.
+     */
+    public long seed() {
+        return seed;
+    }
+
+    /**
+     * Splits a new independent stream. Streams split in the same order from sources with the same seed are the same.
+     *
+     * @return - the new stream (to be used by a single thread).
+     */
+    public synchronized SplittableRandom split() {
+        return root.split();
+    }
+
+    /**
+     * @return - the stream of the current thread (split when the thread first asks for it).
+     */
+    public SplittableRandom current() {
+        return streams.get();
+    }
+
+    /**
+     * Randomly permutes a list (the same algorithm as Collections.shuffle, with a splittable stream).
+     *
+     * @param list   - the list to shuffle.
+     * @param random - the stream to shuffle with.
+     */
+    public static <T> void shuffle(List<T> list, SplittableRandom random) {
+        for (int i = list.size(); i > 1; i--)
+            list.set(i - 1, list.set(random.nextInt(i), list.get(i - 1)));
+    }
+}
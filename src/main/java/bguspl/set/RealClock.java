@@ -0,0 +1,68 @@
+package bguspl.set;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The system clock (see Clock.REAL).
+ */
+public class RealClock implements Clock {
+
+    RealClock() {
+    }
+
+    @Override
+    public long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+
+    @Override
+    public long nanoTime() {
+        return System.nanoTime();
+    }
+
+    @Override
+    public Runnable participant(Runnable task) {
+        return task;
+    }
+
+    @Override
+    public void waitOn(Object monitor, long millis) throws InterruptedException {
+        monitor.wait(millis);
+    }
+
+    @Override
+    public void notifyAllOn(Object monitor) {
+        monitor.notifyAll();
+    }
+
+    @Override
+    public void await(Lock lock, Condition condition, long millis) throws InterruptedException {
+        if (millis > 0)
+            condition.await(millis, TimeUnit.MILLISECONDS);
+        else
+            condition.await();
+    }
+
+    @Override
+    public void signal(Lock lock, Condition condition) {
+        condition.signal();
+    }
+
+    @Override
+    public void park(long millis) throws InterruptedException {
+        if (millis > 0)
+            LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(millis));
+        else
+            LockSupport.park(this);
+        if (Thread.interrupted())
+            throw new InterruptedException();
+    }
+
+    @Override
+    public void unpark(Thread thread) {
+        LockSupport.unpark(thread);
+    }
+}
@@ -0,0 +1,463 @@
+package bguspl.set;
+
+import bguspl.set.ex.Player;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Logger;
+
+/**
+ * A non-blocking server that lets remote clients play as human players, using a simple line protocol.
+ * <p>
+ * Client to server: "J player" joins the game as a (human) player, "K slot" presses the key of a slot.
+ * Server to client: "OK player" or "ERR reason" in reply to a join, and the game updates: "C slot card" card placed,
+ * "R slot" card removed, "T player slot" token placed, "U player slot" token removed, "X slot" all tokens removed from
+ * a slot ("X" alone for the whole table), "S player score", "F player millis" freeze, "D millis warn" countdown
+ * (warn is 0 or 1), "E millis" elapsed time and "W player..." winners. Players and slots are numbered from 0.
+ * <p>
+ * A single selector thread accepts the connections, reads the input and writes the updates. The game threads only
+ * queue their updates and wake the selector up. Every update is formatted once and its bytes are shared by all the
+ * clients, and a client that connects in the middle of a game first gets a snapshot of the table.
+ */
+public class RemotePlayerServer implements UserInterface {
+
+    /**
+     * The longest input line a client may send.
+     */
+    private static final int MAX_LINE = 64;
+
+    /**
+     * A client that falls further behind than this number of bytes is disconnected.
+     */
+    private static final int MAX_PENDING_BYTES = 1 << 20;
+
+    /**
+     * The maximum time dispose() waits for the server thread to stop.
+     */
+    private static final long DISPOSE_TIMEOUT_MILLIS = 2000;
+
+    /**
+     * The types of the queued updates.
+     */
+    private static final int CARD_PLACED = 0;
+    private static final int CARD_REMOVED = 1;
+    private static final int TOKEN_PLACED = 2;
+    private static final int TOKEN_REMOVED = 3;
+    private static final int SLOT_TOKENS_REMOVED = 4;
+    private static final int ALL_TOKENS_REMOVED = 5;
+    private static final int SCORE = 6;
+    private static final int FREEZE = 7;
+    private static final int COUNTDOWN = 8;
+    private static final int ELAPSED = 9;
+    private static final int WINNER = 10;
+
+    private static final int NONE = -1;
+
+    private final Logger logger;
+    private final Config config;
+    private final Player[] players;
+    private final Selector selector;
+    private final ServerSocketChannel server;
+    private final Thread selectorThread;
+    private volatile boolean running = true;
+
+    /**
+     * Updates queued by the game threads, each one is {type, arguments...}.
+     */
+    private final Queue<long[]> updates = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean wakeupPending = new AtomicBoolean();
+
+    /**
+     * The connected clients and the table as the clients see it (used only by the selector thread).
+     */
+    private final List<Client> clients = new ArrayList<>();
+    private final int[] cards;
+    private final boolean[][] tokens;
+    private final int[] scores;
+    private final long[] freezes;
+
+    /**
+     * A connected client.
+     */
+    private static class Client {
+
+        private final SocketChannel channel;
+        private final ByteBuffer in = ByteBuffer.allocate(MAX_LINE);
+        private final Deque<ByteBuffer> out = new ArrayDeque<>();
+        private int pendingBytes;
+        private int player = NONE;
+
+        private Client(SocketChannel channel) {
+            this.channel = channel;
+        }
+    }
+
+    /**
+     * Opens the server socket and starts the selector thread.
+     *
+     * @param logger  - the logger.
+     * @param config  - the game configuration (config.serverAddress and config.serverPort are the address and port to
+     *                listen on, port 0 for any free port).
+     * @param players - the players (may be filled after the server is created, before the game starts).
+     * @throws IOException - if the server socket cannot be opened.
+     */
+    public RemotePlayerServer(Logger logger, Config config, Player[] players) throws IOException {
+        this.logger = logger;
+        this.config = config;
+        this.players = players;
+        cards = new int[config.tableSize];
+        Arrays.fill(cards, NONE);
+        tokens = new boolean[config.players][config.tableSize];
+        scores = new int[config.players];
+        freezes = new long[config.players];
+
+        selector = Selector.open();
+        server = ServerSocketChannel.open();
+        server.bind(new InetSocketAddress(InetAddress.getByName(config.serverAddress), config.serverPort));
+        server.configureBlocking(false);
+        server.register(selector, SelectionKey.OP_ACCEPT);
+
+        selectorThread = new Thread(this::run, "remote-players");
+        selectorThread.setDaemon(true);
+        selectorThread.start();
+        logger.info("remote players server listening on " + getAddress().getHostAddress() + " port "
+                + getPort());
+    }
+
+    /**
+     * @return - the port the server listens on.
+     */
+    public int getPort() {
+        return server.socket().getLocalPort();
+    }
+
+    /**
+     * @return - the address the server listens on.
+     */
+    public InetAddress getAddress() {
+        return server.socket().getInetAddress();
+    }
+
+    /**
+     * The main loop of the selector thread.
+     */
+    private void run() {
+        ThreadLogger.logStart(logger, Thread.currentThread().getName());
+        try {
+            while (running) {
+                selector.select();
+                wakeupPending.set(false);
+                for (long[] update = updates.poll(); update != null; update = updates.poll())
+                    publish(update);
+                for (SelectionKey key : selector.selectedKeys()) {
+                    if (!key.isValid())
+                        continue;
+                    if (key.isAcceptable())
+                        accept();
+                    else if (key.isReadable())
+                        read((Client) key.attachment());
+                }
+                selector.selectedKeys().clear();
+                for (Client client : new ArrayList<>(clients))
+                    flush(client);
+            }
+        } catch (IOException e) {
+            logger.severe("remote players server failed: " + e.getMessage());
+        } finally {
+            for (Client client : new ArrayList<>(clients))
+                disconnect(client);
+            try {
+                server.close();
+                selector.close();
+            } catch (IOException ignored) {
+            }
+            ThreadLogger.logStop(logger, Thread.currentThread().getName());
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = server.accept();
+        if (channel == null)
+            return;
+        channel.configureBlocking(false);
+        Client client = new Client(channel);
+        channel.register(selector, SelectionKey.OP_READ, client);
+        clients.add(client);
+        sendSnapshot(client);
+    }
+
+    private void read(Client client) {
+        try {
+            if (client.channel.read(client.in) < 0) {
+                disconnect(client);
+                return;
+            }
+        } catch (IOException e) {
+            disconnect(client);
+            return;
+        }
+        int start = 0;
+        for (int i = 0; i < client.in.position(); i++) {
+            if (client.in.get(i) == '\n') {
+                handleLine(client, new String(client.in.array(), start, i - start, StandardCharsets.US_ASCII).trim());
+                start = i + 1;
+            }
+        }
+        if (start == 0 && !client.in.hasRemaining()) {
+            send(client, "ERR line too long");
+            disconnect(client);
+            return;
+        }
+        client.in.limit(client.in.position());
+        client.in.position(start);
+        client.in.compact();
+    }
+
+    private void handleLine(Client client, String line) {
+        String[] words = line.split("\\s+");
+        try {
+            if (words.length == 2 && words[0].equals("J")) {
+                int player = Integer.parseInt(words[1]);
+                if (player < 0 || player >= config.humanPlayers)
+                    send(client, "ERR no human player " + player);
+                else if (clients.stream().anyMatch(c -> c.player == player))
+                    send(client, "ERR player " + player + " was already joined");
+                else {
+                    client.player = player;
+                    send(client, "OK " + player);
+                }
+            } else if (words.length == 2 && words[0].equals("K")) {
+                int slot = Integer.parseInt(words[1]);
+                if (client.player == NONE)
+                    send(client, "ERR join first");
+                else if (slot < 0 || slot >= config.tableSize)
+                    send(client, "ERR no slot " + slot);
+                else
+                    players[client.player].keyPressed(slot);
+            } else if (!line.isEmpty())
+                send(client, "ERR unknown command " + line);
+        } catch (NumberFormatException e) {
+            send(client, "ERR bad number in " + line);
+        }
+    }
+
+    /**
+     * Applies an update to the table the clients see and queues it to all the clients.
+     */
+    private void publish(long[] update) {
+        int a = (int) update[1];
+        int b = update.length > 2 ? (int) update[2] : NONE;
+        String line;
+        switch ((int) update[0]) {
+            case CARD_PLACED:
+                cards[b] = a;
+                line = "C " + b + " " + a;
+                break;
+            case CARD_REMOVED:
+                cards[a] = NONE;
+                line = "R " + a;
+                break;
+            case TOKEN_PLACED:
+                tokens[a][b] = true;
+                line = "T " + a + " " + b;
+                break;
+            case TOKEN_REMOVED:
+                tokens[a][b] = false;
+                line = "U " + a + " " + b;
+                break;
+            case SLOT_TOKENS_REMOVED:
+                for (boolean[] playerTokens : tokens)
+                    playerTokens[a] = false;
+                line = "X " + a;
+                break;
+            case ALL_TOKENS_REMOVED:
+                for (boolean[] playerTokens : tokens)
+                    Arrays.fill(playerTokens, false);
+                line = "X";
+                break;
+            case SCORE:
+                scores[a] = b;
+                line = "S " + a + " " + b;
+                break;
+            case FREEZE:
+                freezes[a] = update[2];
+                line = "F " + a + " " + update[2];
+                break;
+            case COUNTDOWN:
+                line = "D " + update[1] + " " + update[2];
+                break;
+            case ELAPSED:
+                line = "E " + update[1];
+                break;
+            default: // WINNER
+                StringBuilder sb = new StringBuilder("W");
+                for (int i = 1; i < update.length; i++)
+                    sb.append(' ').append(update[i]);
+                line = sb.toString();
+        }
+        ByteBuffer bytes = encode(line);
+        for (Client client : new ArrayList<>(clients))
+            queue(client, bytes.duplicate());
+    }
+
+    private void sendSnapshot(Client client) {
+        for (int slot = 0; slot < cards.length; slot++)
+            if (cards[slot] != NONE)
+                send(client, "C " + slot + " " + cards[slot]);
+        for (int player = 0; player < tokens.length; player++) {
+            for (int slot = 0; slot < cards.length; slot++)
+                if (tokens[player][slot])
+                    send(client, "T " + player + " " + slot);
+            send(client, "S " + player + " " + scores[player]);
+            if (freezes[player] > 0)
+                send(client, "F " + player + " " + freezes[player]);
+        }
+    }
+
+    private static ByteBuffer encode(String line) {
+        return ByteBuffer.wrap((line + "\n").getBytes(StandardCharsets.US_ASCII)).asReadOnlyBuffer();
+    }
+
+    private void send(Client client, String line) {
+        queue(client, encode(line));
+    }
+
+    private void queue(Client client, ByteBuffer bytes) {
+        client.out.add(bytes);
+        client.pendingBytes += bytes.remaining();
+        if (client.pendingBytes > MAX_PENDING_BYTES) {
+            logger.severe("disconnecting a remote client that fell behind");
+            disconnect(client);
+        }
+    }
+
+    /**
+     * Writes as much of the client's pending output as the socket takes, and asks to be notified when it can take more.
+     */
+    private void flush(Client client) {
+        try {
+            while (!client.out.isEmpty()) {
+                ByteBuffer bytes = client.out.peek();
+                client.pendingBytes -= client.channel.write(bytes);
+                if (bytes.hasRemaining())
+                    break;
+                client.out.poll();
+            }
+            SelectionKey key = client.channel.keyFor(selector);
+            if (key != null && key.isValid())
+                key.interestOps(client.out.isEmpty() ? SelectionKey.OP_READ : SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        } catch (IOException e) {
+            disconnect(client);
+        }
+    }
+
+    private void disconnect(Client client) {
+        clients.remove(client);
+        try {
+            client.channel.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    /**
+     * Queues an update for the selector thread (called by the game threads).
+     */
+    private void update(long... update) {
+        updates.add(update);
+        if (wakeupPending.compareAndSet(false, true))
+            selector.wakeup();
+    }
+
+    @Override
+    public void placeCard(int card, int slot) {
+        update(CARD_PLACED, card, slot);
+    }
+
+    @Override
+    public void removeCard(int slot) {
+        update(CARD_REMOVED, slot);
+    }
+
+    @Override
+    public void placeToken(int player, int slot) {
+        update(TOKEN_PLACED, player, slot);
+    }
+
+    @Override
+    public void removeTokens() {
+        update(ALL_TOKENS_REMOVED, 0);
+    }
+
+    @Override
+    public void removeTokens(int slot) {
+        update(SLOT_TOKENS_REMOVED, slot);
+    }
+
+    @Override
+    public void removeToken(int player, int slot) {
+        update(TOKEN_REMOVED, player, slot);
+    }
+
+    @Override
+    public void setCountdown(long millies, boolean warn) {
+        update(COUNTDOWN, millies, warn ? 1 : 0);
+    }
+
+    @Override
+    public void setElapsed(long millies) {
+        update(ELAPSED, millies);
+    }
+
+    @Override
+    public void setFreeze(int player, long millies) {
+        update(FREEZE, player, millies);
+    }
+
+    @Override
+    public void setScore(int player, int score) {
+        update(SCORE, player, score);
+    }
+
+    @Override
+    public void announceWinner(int[] players) {
+        long[] update = new long[players.length + 1];
+        update[0] = WINNER;
+        for (int i = 0; i < players.length; i++)
+            update[i + 1] = players[i];
+        update(update);
+    }
+
+    /**
+     * Sends the pending updates and closes the server, waiting at most DISPOSE_TIMEOUT_MILLIS for the server thread.
+     */
+    @Override
+    public void dispose() {
+        running = false;
+        selector.wakeup();
+        try {
+            selectorThread.join(DISPOSE_TIMEOUT_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        if (selectorThread.isAlive()) {
+            selectorThread.interrupt(); // a last resort, it is a daemon thread and is not waited for
+            logger.severe("thread " + selectorThread.getName() + " did not stop within " + DISPOSE_TIMEOUT_MILLIS + " ms");
+        }
+    }
+}
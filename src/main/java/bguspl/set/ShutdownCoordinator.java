@@ -0,0 +1,109 @@
+package bguspl.set;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Stops the threads of a game within a bounded time.
+ * <p>
+ * The threads are registered in the order they were created, and are signalled and joined in the reverse order, all
+ * within one total deadline. Threads still running at the deadline are interrupted and left behind rather than waited
+ * for. The time each thread took to stop, counted from the start of the shutdown, is logged.
+ */
+public class ShutdownCoordinator {
+
+    /**
+     * A registered game thread and the way to ask it to stop.
+     */
+    private static class Entry {
+        final GameThreads.Task task;
+        final Runnable signal;
+
+        Entry(GameThreads.Task task, Runnable signal) {
+            this.task = task;
+            this.signal = signal;
+        }
+    }
+
+    private final Logger logger;
+
+    /**
+     * The maximum total time the shutdown waits for the threads.
+     */
+    private final long timeoutMillis;
+
+    /**
+     * The registered threads, by the order they were created (guarded by this).
+     */
+    private final List<Entry> entries = new ArrayList<>();
+
+    /**
+     * Whether all the threads stopped before the deadline, or null before the shutdown.
+     */
+    private Boolean stopped;
+
+    /**
+     * The class constructor.
+     *
+     * @param logger        - the logger the stop times are reported to.
+     * @param timeoutMillis - the maximum total time to wait for the threads to stop.
+     */
+    public ShutdownCoordinator(Logger logger, long timeoutMillis) {
+        this.logger = logger;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * Registers a game thread (threads must be registered in the order they were created).
+     * A thread registered after the shutdown is only signalled.
+     *
+     * @param task   - the handle of the thread (null if it was not started, in which case it is ignored).
+     * @param signal - asks the thread to stop, without waiting for it.
+     */
+    public synchronized void add(GameThreads.Task task, Runnable signal) {
+        if (task == null)
+            return;
+        if (stopped != null)
+            signal.run();
+        else
+            entries.add(new Entry(task, signal));
+    }
+
+    /**
+     * Signals the registered threads and waits for them to stop, in the reverse order of their creation.
+     * Calling it again (e.g. from another thread) waits for the first shutdown and returns its result.
+     *
+     * @return - true iff all the threads stopped before the deadline.
+     * @post - the stop time of every thread is logged.
+     */
+    public synchronized boolean shutdown() {
+        if (stopped != null)
+            return stopped;
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        for (int i = entries.size() - 1; i >= 0; i--) // all the threads stop at once, each seeing its own signal
+            entries.get(i).signal.run();
+        boolean allStopped = true;
+        for (int i = entries.size() - 1; i >= 0; i--) {
+            Entry entry = entries.get(i);
+            try {
+                long left = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (!entry.task.isDone() && (left <= 0 || !entry.task.join(left))) {
+                    entry.task.interrupt(); // a last resort, it is not waited for
+                    logger.severe("thread " + entry.task.name() + " did not stop within " + timeoutMillis + " ms");
+                    allStopped = false;
+                    continue;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+            logger.info("thread " + entry.task.name() + " stopped after "
+                    + TimeUnit.NANOSECONDS.toMicros(Math.max(entry.task.endNanos() - start, 0)) / 1000.0 + " ms");
+        }
+        stopped = allStopped;
+        return allStopped;
+    }
+}
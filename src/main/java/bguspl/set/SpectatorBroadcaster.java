@@ -0,0 +1,457 @@
+package bguspl.set;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Logger;
+
+/**
+ * Broadcasts the game to any number of spectators as a compact binary stream of deltas.
+ * <p>
+ * Every change is a frame made of an opcode byte followed by varints (unsigned LEB128, signed values zigzag encoded):
+ * <pre>
+ * 1 CARD_PLACED slot card          2 CARD_REMOVED slot
+ * 3 TOKEN_PLACED player slot       4 TOKEN_REMOVED player slot
+ * 5 SLOT_TOKENS_REMOVED slot       6 ALL_TOKENS_REMOVED
+ * 7 SCORE player delta             8 FREEZE player delta
+ * 9 COUNTDOWN delta warn           10 ELAPSED delta
+ * 11 WINNER count player...        12 RESET
+ * </pre>
+ * Scores, freezes, the countdown and the elapsed time are sent as the difference from their previous value. A new
+ * spectator first gets a RESET frame (everything empty and zero) followed by the current state.
+ * <p>
+ * The game threads append their frames to a single shared buffer, which costs the same no matter how many spectators
+ * are watching. The broadcast thread then hands that same buffer (read only) to every spectator.
+ */
+public class SpectatorBroadcaster implements UserInterface {
+
+    private static final byte CARD_PLACED = 1;
+    private static final byte CARD_REMOVED = 2;
+    private static final byte TOKEN_PLACED = 3;
+    private static final byte TOKEN_REMOVED = 4;
+    private static final byte SLOT_TOKENS_REMOVED = 5;
+    private static final byte ALL_TOKENS_REMOVED = 6;
+    private static final byte SCORE = 7;
+    private static final byte FREEZE = 8;
+    private static final byte COUNTDOWN = 9;
+    private static final byte ELAPSED = 10;
+    private static final byte WINNER = 11;
+    private static final byte RESET = 12;
+
+    private static final int NONE = -1;
+    private static final int INITIAL_BUFFER_SIZE = 4096;
+
+    /**
+     * A spectator that falls further behind than this number of bytes is disconnected.
+     */
+    private static final int MAX_PENDING_BYTES = 1 << 20;
+
+    /**
+     * The maximum time dispose() waits for the broadcast thread to stop.
+     */
+    private static final long DISPOSE_TIMEOUT_MILLIS = 2000;
+
+    private final Logger logger;
+    private final Selector selector;
+    private final ServerSocketChannel server;
+    private final Thread broadcastThread;
+    private volatile boolean running = true;
+    private final AtomicBoolean wakeupPending = new AtomicBoolean();
+
+    /**
+     * The frames that were not broadcast yet, and the game state they lead to (guarded by this).
+     */
+    private ByteBuffer frames = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+    private final int[] cards;
+    private final boolean[][] tokens;
+    private final long[] scores;
+    private final long[] freezes;
+    private long countdown;
+    private boolean warn;
+    private long elapsed;
+
+    /**
+     * The connected spectators (used only by the broadcast thread).
+     */
+    private final List<Spectator> spectators = new ArrayList<>();
+
+    /**
+     * A connected spectator.
+     */
+    private static class Spectator {
+
+        private final SocketChannel channel;
+        private final Deque<ByteBuffer> out = new ArrayDeque<>();
+        private int pendingBytes;
+
+        private Spectator(SocketChannel channel) {
+            this.channel = channel;
+        }
+    }
+
+    /**
+     * Opens the server socket and starts the broadcast thread.
+     *
+     * @param logger - the logger.
+     * @param config - the game configuration (config.spectatorPort is the port to listen on, 0 for any free port).
+     * @throws IOException - if the server socket cannot be opened.
+     */
+    public SpectatorBroadcaster(Logger logger, Config config) throws IOException {
+        this.logger = logger;
+        cards = new int[config.tableSize];
+        Arrays.fill(cards, NONE);
+        tokens = new boolean[config.players][config.tableSize];
+        scores = new long[config.players];
+        freezes = new long[config.players];
+
+        selector = Selector.open();
+        server = ServerSocketChannel.open();
+        server.bind(new InetSocketAddress(config.spectatorPort));
+        server.configureBlocking(false);
+        server.register(selector, SelectionKey.OP_ACCEPT);
+
+        broadcastThread = new Thread(this::run, "spectators");
+        broadcastThread.setDaemon(true);
+        broadcastThread.start();
+        logger.info("spectator broadcast listening on port " + getPort());
+    }
+
+    /**
+     * @return - the port the broadcaster listens on.
+     */
+    public int getPort() {
+        return server.socket().getLocalPort();
+    }
+
+    /**
+     * The main loop of the broadcast thread.
+     */
+    private void run() {
+        ThreadLogger.logStart(logger, Thread.currentThread().getName());
+        try {
+            while (running) {
+                selector.select();
+                wakeupPending.set(false);
+                broadcast(takeFrames());
+                for (SelectionKey key : selector.selectedKeys()) {
+                    if (!key.isValid())
+                        continue;
+                    if (key.isAcceptable())
+                        accept();
+                    else if (key.isReadable())
+                        read((Spectator) key.attachment());
+                }
+                selector.selectedKeys().clear();
+                for (Spectator spectator : new ArrayList<>(spectators))
+                    flush(spectator);
+            }
+        } catch (IOException e) {
+            logger.severe("spectator broadcast failed: " + e.getMessage());
+        } finally {
+            for (Spectator spectator : new ArrayList<>(spectators))
+                disconnect(spectator);
+            try {
+                server.close();
+                selector.close();
+            } catch (IOException ignored) {
+            }
+            ThreadLogger.logStop(logger, Thread.currentThread().getName());
+        }
+    }
+
+    /**
+     * @return - the frames appended since the last call (read only), or null if there are none.
+     */
+    private synchronized ByteBuffer takeFrames() {
+        if (frames.position() == 0)
+            return null;
+        frames.flip();
+        ByteBuffer taken = frames.asReadOnlyBuffer();
+        frames = ByteBuffer.allocate(Math.max(INITIAL_BUFFER_SIZE, frames.capacity() / 2));
+        return taken;
+    }
+
+    private void broadcast(ByteBuffer taken) {
+        if (taken == null)
+            return;
+        for (Spectator spectator : new ArrayList<>(spectators))
+            queue(spectator, taken.duplicate());
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = server.accept();
+        if (channel == null)
+            return;
+        channel.configureBlocking(false);
+        Spectator spectator = new Spectator(channel);
+        channel.register(selector, SelectionKey.OP_READ, spectator);
+        ByteBuffer snapshot;
+        synchronized (this) { // everything before the snapshot goes to the others, everything after it to all
+            broadcast(takeFrames());
+            snapshot = snapshot();
+        }
+        spectators.add(spectator);
+        queue(spectator, snapshot);
+    }
+
+    /**
+     * @return - a RESET frame followed by the frames that lead from an empty table to the current state.
+     */
+    private ByteBuffer snapshot() {
+        ByteBuffer saved = frames;
+        frames = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+        frames.put(RESET);
+        for (int slot = 0; slot < cards.length; slot++)
+            if (cards[slot] != NONE)
+                frame(CARD_PLACED, slot, cards[slot]);
+        for (int player = 0; player < tokens.length; player++) {
+            for (int slot = 0; slot < cards.length; slot++)
+                if (tokens[player][slot])
+                    frame(TOKEN_PLACED, player, slot);
+            if (scores[player] != 0)
+                signedFrame(SCORE, player, scores[player]);
+            if (freezes[player] != 0)
+                signedFrame(FREEZE, player, freezes[player]);
+        }
+        if (countdown != 0 || warn) {
+            frame(COUNTDOWN);
+            putVarLong(zigzag(countdown));
+            putVarLong(warn ? 1 : 0);
+        }
+        if (elapsed != 0)
+            signedFrame(ELAPSED, NONE, elapsed);
+        frames.flip();
+        ByteBuffer snapshot = frames.asReadOnlyBuffer();
+        frames = saved;
+        return snapshot;
+    }
+
+    private void read(Spectator spectator) {
+        ByteBuffer ignored = ByteBuffer.allocate(256); // spectators have nothing to say
+        try {
+            if (spectator.channel.read(ignored) < 0)
+                disconnect(spectator);
+        } catch (IOException e) {
+            disconnect(spectator);
+        }
+    }
+
+    private void queue(Spectator spectator, ByteBuffer bytes) {
+        spectator.out.add(bytes);
+        spectator.pendingBytes += bytes.remaining();
+        if (spectator.pendingBytes > MAX_PENDING_BYTES) {
+            logger.severe("disconnecting a spectator that fell behind");
+            disconnect(spectator);
+        }
+    }
+
+    private void flush(Spectator spectator) {
+        try {
+            while (!spectator.out.isEmpty()) {
+                ByteBuffer bytes = spectator.out.peek();
+                spectator.pendingBytes -= spectator.channel.write(bytes);
+                if (bytes.hasRemaining())
+                    break;
+                spectator.out.poll();
+            }
+            SelectionKey key = spectator.channel.keyFor(selector);
+            if (key != null && key.isValid())
+                key.interestOps(spectator.out.isEmpty() ? SelectionKey.OP_READ : SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        } catch (IOException e) {
+            disconnect(spectator);
+        }
+    }
+
+    private void disconnect(Spectator spectator) {
+        spectators.remove(spectator);
+        try {
+            spectator.channel.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    /**
+     * Appends a frame with unsigned arguments (NONE arguments are skipped). Must be called while holding this.
+     */
+    private void frame(byte opcode, int... arguments) {
+        ensureCapacity(1 + 10 * (arguments.length + 2));
+        frames.put(opcode);
+        for (int argument : arguments)
+            if (argument != NONE)
+                putVarLong(argument);
+    }
+
+    /**
+     * Appends a frame with an optional unsigned argument followed by a signed delta. Must be called while holding this.
+     */
+    private void signedFrame(byte opcode, int argument, long delta) {
+        frame(opcode, argument);
+        putVarLong(zigzag(delta));
+    }
+
+    private void ensureCapacity(int bytes) {
+        if (frames.remaining() < bytes) {
+            ByteBuffer larger = ByteBuffer.allocate(Math.max(frames.capacity() * 2, frames.position() + bytes));
+            frames.flip();
+            larger.put(frames);
+            frames = larger;
+        }
+    }
+
+    private void putVarLong(long value) {
+        while ((value & ~0x7fL) != 0) {
+            frames.put((byte) ((value & 0x7f) | 0x80));
+            value >>>= 7;
+        }
+        frames.put((byte) value);
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    /**
+     * Wakes the broadcast thread up to send the new frames (called by the game threads after appending).
+     */
+    private void wakeup() {
+        if (wakeupPending.compareAndSet(false, true))
+            selector.wakeup();
+    }
+
+    @Override
+    public void placeCard(int card, int slot) {
+        synchronized (this) {
+            cards[slot] = card;
+            frame(CARD_PLACED, slot, card);
+        }
+        wakeup();
+    }
+
+    @Override
+    public void removeCard(int slot) {
+        synchronized (this) {
+            cards[slot] = NONE;
+            frame(CARD_REMOVED, slot);
+        }
+        wakeup();
+    }
+
+    @Override
+    public void placeToken(int player, int slot) {
+        synchronized (this) {
+            tokens[player][slot] = true;
+            frame(TOKEN_PLACED, player, slot);
+        }
+        wakeup();
+    }
+
+    @Override
+    public void removeTokens() {
+        synchronized (this) {
+            for (boolean[] playerTokens : tokens)
+                Arrays.fill(playerTokens, false);
+            frame(ALL_TOKENS_REMOVED);
+        }
+        wakeup();
+    }
+
+    @Override
+    public void removeTokens(int slot) {
+        synchronized (this) {
+            for (boolean[] playerTokens : tokens)
+                playerTokens[slot] = false;
+            frame(SLOT_TOKENS_REMOVED, slot);
+        }
+        wakeup();
+    }
+
+    @Override
+    public void removeToken(int player, int slot) {
+        synchronized (this) {
+            tokens[player][slot] = false;
+            frame(TOKEN_REMOVED, player, slot);
+        }
+        wakeup();
+    }
+
+    @Override
+    public void setCountdown(long millies, boolean warn) {
+        synchronized (this) {
+            frame(COUNTDOWN);
+            putVarLong(zigzag(millies - countdown));
+            putVarLong(warn ? 1 : 0);
+            countdown = millies;
+            this.warn = warn;
+        }
+        wakeup();
+    }
+
+    @Override
+    public void setElapsed(long millies) {
+        synchronized (this) {
+            signedFrame(ELAPSED, NONE, millies - elapsed);
+            elapsed = millies;
+        }
+        wakeup();
+    }
+
+    @Override
+    public void setFreeze(int player, long millies) {
+        synchronized (this) {
+            signedFrame(FREEZE, player, millies - freezes[player]);
+            freezes[player] = millies;
+        }
+        wakeup();
+    }
+
+    @Override
+    public void setScore(int player, int score) {
+        synchronized (this) {
+            signedFrame(SCORE, player, score - scores[player]);
+            scores[player] = score;
+        }
+        wakeup();
+    }
+
+    @Override
+    public void announceWinner(int[] players) {
+        synchronized (this) {
+            frame(WINNER, players.length);
+            ensureCapacity(10 * players.length);
+            for (int player : players)
+                putVarLong(player);
+        }
+        wakeup();
+    }
+
+    /**
+     * Sends the pending frames and closes the broadcaster, waiting at most DISPOSE_TIMEOUT_MILLIS for the broadcast
+     * thread.
+     */
+    @Override
+    public void dispose() {
+        running = false;
+        selector.wakeup();
+        try {
+            broadcastThread.join(DISPOSE_TIMEOUT_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        if (broadcastThread.isAlive()) {
+            broadcastThread.interrupt(); // a last resort, it is a daemon thread and is not waited for
+            logger.severe("thread " + broadcastThread.getName() + " did not stop within " + DISPOSE_TIMEOUT_MILLIS
+                    + " ms");
+        }
+    }
+}
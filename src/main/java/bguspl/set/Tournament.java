@@ -0,0 +1,123 @@
+package bguspl.set;
+
+import bguspl.set.ex.Dealer;
+import bguspl.set.ex.Player;
+import bguspl.set.ex.Table;
+
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * Hosts many independent computer-only games in a single process (for tournaments and load testing).
+ * <p>
+ * Every game has its own environment, table, dealer, players and random source, so games never share mutable state.
+ * The games share the configuration, the precomputed card features and a single pool that runs all of their threads.
+ */
+public class Tournament {
+
+    private final Logger logger;
+    private final Config config;
+    private final int games;
+    private final int concurrentGames;
+    private final ExecutorService pool = Executors.newCachedThreadPool();
+    private final GameThreads threads = new GameThreads(pool);
+
+    /**
+     * Aggregated results of the finished games.
+     */
+    private final AtomicLong points = new AtomicLong();
+    private final AtomicLong gameNanos = new AtomicLong();
+
+    /**
+     * The class constructor.
+     *
+     * @param logger          - the logger shared by all the games.
+     * @param config          - the configuration shared by all the games (must not have human players).
+     * @param games           - the total number of games to play.
+     * @param concurrentGames - the maximum number of games to play at the same time.
+     */
+    public Tournament(Logger logger, Config config, int games, int concurrentGames) {
+        this.logger = logger;
+        this.config = config;
+        this.games = games;
+        this.concurrentGames = concurrentGames;
+    }
+
+    /**
+     * Plays a single game to its end on the calling thread, which acts as the dealer thread.
+     *
+     * @param game - the number of the game (used to derive its seed).
+     */
+    private void play(int game) {
+        RandomSource random = new RandomSource(config.randomSeed != 0 ? config.randomSeed + game : System.nanoTime());
+        Env env = new Env(logger, config, new UserInterfaceHeadless(), new UtilImpl(config, random), Journal.DISABLED,
+                random, threads, config.virtualClock ? new VirtualClock() : Clock.REAL);
+        Table table = new Table(env);
+        Player[] players = new Player[config.players];
+        Dealer dealer = new Dealer(env, table, players);
+        for (int i = 0; i < players.length; i++)
+            players[i] = new Player(env, dealer, table, i, false);
+
+        long start = System.nanoTime();
+        env.clock.participant(dealer).run();
+        gameNanos.addAndGet(System.nanoTime() - start);
+        for (Player player : players)
+            points.addAndGet(player.score());
+    }
+
+    /**
+     * Plays all the games and reports the aggregated throughput.
+     */
+    public void run() throws InterruptedException {
+        Semaphore running = new Semaphore(concurrentGames);
+        long start = System.nanoTime();
+        for (int i = 0; i < games; i++) {
+            running.acquire();
+            final int game = i;
+            threads.start(() -> {
+                try {
+                    play(game);
+                } finally {
+                    running.release();
+                }
+            }, "dealer-" + game);
+        }
+        running.acquire(concurrentGames); // waiting for the last games to end
+        double seconds = (System.nanoTime() - start) / 1e9;
+        pool.shutdown();
+
+        String report = String.format("played %d games (%d at a time) in %.2f s: %.2f games/sec, %.1f points/sec, "
+                        + "mean game %.0f ms", games, concurrentGames, seconds, games / seconds, points.get() / seconds,
+                gameNanos.get() / 1e6 / games);
+        logger.severe(report);
+        System.out.println(report);
+    }
+
+    /**
+     * Runs a tournament. All the players of the configuration play as computer players.
+     *
+     * @param args - the number of games, the number of games to play at the same time and the configuration file.
+     */
+    public static void main(String[] args) throws InterruptedException {
+        if (args.length < 2) {
+            System.out.println("usage: Tournament <games> <concurrent games> [config file]");
+            return;
+        }
+        Logger logger = Logger.getLogger("SetTournamentLogger");
+        logger.setUseParentHandlers(false);
+
+        Properties properties = Config.loadProperties(args.length > 2 ? args[2] : "config.properties", logger);
+        int players = Integer.parseInt(properties.getProperty("HumanPlayers", "2"))
+                + Integer.parseInt(properties.getProperty("ComputerPlayers", "0"));
+        properties.setProperty("HumanPlayers", "0");
+        properties.setProperty("ComputerPlayers", Integer.toString(players));
+        properties.setProperty("Hints", "False");
+        Config config = new Config(logger, properties);
+
+        new Tournament(logger, config, Integer.parseInt(args[0]), Integer.parseInt(args[1])).run();
+    }
+}
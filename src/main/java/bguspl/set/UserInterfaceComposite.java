@@ -0,0 +1,89 @@
+package bguspl.set;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Forwards every user interface call to several user interfaces (e.g. the screen and the remote players).
+ */
+public class UserInterfaceComposite implements UserInterface {
+
+    private final UserInterface[] uis;
+
+    /**
+     * @param uis - the user interfaces to forward to (null entries are skipped).
+     */
+    public UserInterfaceComposite(UserInterface... uis) {
+        this.uis = Arrays.stream(uis).filter(Objects::nonNull).toArray(UserInterface[]::new);
+    }
+
+    @Override
+    public void placeCard(int card, int slot) {
+        for (UserInterface ui : uis) ui.placeCard(card, slot);
+    }
+
+    @Override
+    public void removeCard(int slot) {
+        for (UserInterface ui : uis) ui.removeCard(slot);
+    }
+
+    @Override
+    public void placeCards(int[] cards, int[] slots) {
+        for (UserInterface ui : uis) ui.placeCards(cards, slots);
+    }
+
+    @Override
+    public void removeCards(int[] slots) {
+        for (UserInterface ui : uis) ui.removeCards(slots);
+    }
+
+    @Override
+    public void placeToken(int player, int slot) {
+        for (UserInterface ui : uis) ui.placeToken(player, slot);
+    }
+
+    @Override
+    public void removeTokens() {
+        for (UserInterface ui : uis) ui.removeTokens();
+    }
+
+    @Override
+    public void removeTokens(int slot) {
+        for (UserInterface ui : uis) ui.removeTokens(slot);
+    }
+
+    @Override
+    public void removeToken(int player, int slot) {
+        for (UserInterface ui : uis) ui.removeToken(player, slot);
+    }
+
+    @Override
+    public void setCountdown(long millies, boolean warn) {
+        for (UserInterface ui : uis) ui.setCountdown(millies, warn);
+    }
+
+    @Override
+    public void setElapsed(long millies) {
+        for (UserInterface ui : uis) ui.setElapsed(millies);
+    }
+
+    @Override
+    public void setFreeze(int player, long millies) {
+        for (UserInterface ui : uis) ui.setFreeze(player, millies);
+    }
+
+    @Override
+    public void setScore(int player, int score) {
+        for (UserInterface ui : uis) ui.setScore(player, score);
+    }
+
+    @Override
+    public void announceWinner(int[] players) {
+        for (UserInterface ui : uis) ui.announceWinner(players);
+    }
+
+    @Override
+    public void dispose() {
+        for (UserInterface ui : uis) ui.dispose();
+    }
+}
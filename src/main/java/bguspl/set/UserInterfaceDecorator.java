@@ -33,6 +33,21 @@ public class UserInterfaceDecorator implements UserInterface {
         if (ui != null) ui.removeCard(slot);
     }
 
+    @Override
+    public void placeCards(int[] cards, int[] slots) {
+        for (int i = 0; i < cards.length; i++)
+            logger.severe("placing card " + cards[i] + " in slot " + slots[i]);
+        util.spin();
+        if (ui != null) ui.placeCards(cards, slots);
+    }
+
+    @Override
+    public void removeCards(int[] slots) {
+        logger.severe("removing cards from slots " + Arrays.toString(slots));
+        util.spin();
+        if (ui != null) ui.removeCards(slots);
+    }
+
     @Override
     public void placeToken(int player, int slot) {
         logger.severe("player " + (player + 1) + " placing token on slot " + slot);
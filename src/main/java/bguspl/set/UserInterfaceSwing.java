@@ -4,10 +4,16 @@ import bguspl.set.ex.Player;
 
 import javax.swing.*;
 import java.awt.*;
+import java.awt.image.BufferedImage;
 import java.io.FileNotFoundException;
 import java.net.URL;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Deque;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
@@ -24,6 +30,45 @@ public class UserInterfaceSwing extends JFrame implements UserInterface {
     private final WinnerPanel winnerPanel;
     private final Config config;
 
+    /**
+     * The card images, loaded once and shared by all the windows in the process.
+     */
+    private static final Map<String, Image> images = new ConcurrentHashMap<>();
+
+    /**
+     * A change to the table display.
+     */
+    private static class Animation {
+
+        private final Runnable change;
+
+        /**
+         * The slots of a card change, which is shown one table delay after the previous card change, or null for a
+         * token change.
+         */
+        private final int[] slots;
+
+        private Animation(Runnable change, int[] slots) {
+            this.change = change;
+            this.slots = slots;
+        }
+    }
+
+    /**
+     * The table display changes waiting for their turn, in the order they were made (guarded by itself).
+     */
+    private final Deque<Animation> animations = new ArrayDeque<>();
+
+    /**
+     * The number of card changes of each slot waiting in animations (guarded by animations).
+     */
+    private final int[] hiddenChanges;
+
+    /**
+     * Shows the next waiting card change every config.tableDelayMillis, on the event dispatch thread.
+     */
+    private final Timer animationTimer;
+
     static String intInBaseToPaddedString(int n, int padding, int base) {
         return format("%" + padding + "s", Integer.toString(n, base)).replace(' ', '0');
     }
@@ -31,6 +76,7 @@ public class UserInterfaceSwing extends JFrame implements UserInterface {
     public UserInterfaceSwing(Logger logger, Config config, Player[] players) {
 
         this.config = config;
+        hiddenChanges = new int[config.tableSize];
         timerPanel = new TimerPanel();
         gamePanel = new GamePanel();
         playersPanel = new PlayersPanel();
@@ -63,7 +109,10 @@ public class UserInterfaceSwing extends JFrame implements UserInterface {
         setLocationRelativeTo(null);
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
 
-        addKeyListener(new InputManager(logger, config, players));
+        animationTimer = new Timer((int) Math.max(1, config.tableDelayMillis), event -> showNextCardChange());
+        animationTimer.setInitialDelay((int) Math.max(1, config.tableDelayMillis));
+
+        addKeyListener(new InputManager(logger, config, players, this::isShown));
         addWindowListener(new WindowManager());
 
         EventQueue.invokeLater(() -> setVisible(true));
@@ -109,23 +158,29 @@ public class UserInterfaceSwing extends JFrame implements UserInterface {
         private final JLabel[][] tokenText;
 
         private Image loadImageResource(String filename) {
-            URL imageResource = getClass().getClassLoader().getResource(filename);
-            if (imageResource == null)
-                throw new RuntimeException(new FileNotFoundException(filename));
-            return new ImageIcon(imageResource).getImage();
+            return images.computeIfAbsent(filename, name -> {
+                URL imageResource = getClass().getClassLoader().getResource(name);
+                if (imageResource == null)
+                    throw new RuntimeException(new FileNotFoundException(name));
+                return new ImageIcon(imageResource).getImage();
+            });
         }
 
         private GamePanel() {
 
             setPreferredSize(new Dimension(config.columns * config.cellWidth, config.rows * config.cellHeight));
 
-            // init deck and load all pictures from png files
-            assert config.featureSize < 10; // otherwise there will be naming conflicts
+            if (config.hugeDeck) { // no picture per card, the cards are drawn when placed
+                deck = null;
+            } else {
+                // init deck and load all pictures from png files
+                assert config.featureSize < 10; // otherwise there will be naming conflicts
 
-            // load the image resources
-            deck = new Image[config.deckSize];
-            for (int i = 0; i < config.deckSize; ++i)
-                deck[i] = loadImageResource("cards/" + intInBaseToPaddedString(i, config.featureCount, config.featureSize) + ".png");
+                // load the image resources
+                deck = new Image[config.deckSize];
+                for (int i = 0; i < config.deckSize; ++i)
+                    deck[i] = loadImageResource("cards/" + intInBaseToPaddedString(i, config.featureCount, config.featureSize) + ".png");
+            }
             emptyCard = loadImageResource("cards/empty_card.png");
 
             grid = new Image[config.rows][config.columns];
@@ -149,17 +204,55 @@ public class UserInterfaceSwing extends JFrame implements UserInterface {
         }
 
         private void placeCard(int slot, int card) {
-            int row = slot / config.columns;
-            int column = slot % config.columns;
-            grid[row][column] = deck[card];
+            setCard(slot, card);
             validate();
             repaint();
         }
 
-        private void removeCard(int slot) {
+        private void placeCards(int[] slots, int[] cards) {
+            for (int i = 0; i < slots.length; i++)
+                setCard(slots[i], cards[i]);
+            validate();
+            repaint();
+        }
+
+        private void setCard(int slot, int card) {
             int row = slot / config.columns;
             int column = slot % config.columns;
-            grid[row][column] = emptyCard;
+            grid[row][column] = deck != null ? deck[card] : drawCard(card);
+        }
+
+        /**
+         * Draws a card of a huge deck: its features as digits, a few per line.
+         */
+        private Image drawCard(int card) {
+            BufferedImage image = new BufferedImage(config.cellWidth, config.cellHeight, BufferedImage.TYPE_INT_RGB);
+            Graphics2D g = image.createGraphics();
+            g.setColor(Color.WHITE);
+            g.fillRect(0, 0, config.cellWidth, config.cellHeight);
+            g.setColor(Color.BLACK);
+            g.drawRect(0, 0, config.cellWidth - 1, config.cellHeight - 1);
+            g.setFont(new Font("Monospaced", Font.BOLD, config.fontSize));
+            FontMetrics metrics = g.getFontMetrics();
+            String features = intInBaseToPaddedString(card, config.featureCount, config.featureSize);
+            int perLine = Math.max(1, (config.cellWidth - 8) / metrics.charWidth('0'));
+            int lines = (features.length() + perLine - 1) / perLine;
+            int y = (config.cellHeight - lines * metrics.getHeight()) / 2 + metrics.getAscent();
+            for (int i = 0; i < features.length(); i += perLine, y += metrics.getHeight()) {
+                String line = features.substring(i, Math.min(features.length(), i + perLine));
+                g.drawString(line, (config.cellWidth - metrics.stringWidth(line)) / 2, y);
+            }
+            g.dispose();
+            return image;
+        }
+
+        private void removeCard(int slot) {
+            removeCards(new int[]{slot});
+        }
+
+        private void removeCards(int[] slots) {
+            for (int slot : slots)
+                grid[slot / config.columns][slot % config.columns] = emptyCard;
             validate();
             repaint();
         }
@@ -274,34 +367,102 @@ public class UserInterfaceSwing extends JFrame implements UserInterface {
         }
     }
 
+    /**
+     * Shows a change of the table display. The table itself changes at once, the display shows the card changes
+     * one table delay apart, so the dealer never waits for the display. Token changes are shown in order with them.
+     *
+     * @param change - the change to the display.
+     * @param slots  - the slots of a card change, or null for a token change.
+     */
+    private void show(Runnable change, int[] slots) {
+        if (config.tableDelayMillis > 0) {
+            synchronized (animations) {
+                if (slots != null || !animations.isEmpty()) {
+                    animations.add(new Animation(change, slots));
+                    if (slots != null) {
+                        for (int slot : slots)
+                            hiddenChanges[slot]++;
+                    }
+                    if (!animationTimer.isRunning())
+                        animationTimer.start();
+                    return;
+                }
+            }
+        }
+        change.run();
+    }
+
+    /**
+     * Shows the next waiting card change, and the token changes made after it until the next card change.
+     */
+    private void showNextCardChange() {
+        List<Runnable> changes = new ArrayList<>();
+        synchronized (animations) {
+            while (!animations.isEmpty() && (changes.isEmpty() || animations.peek().slots == null)) {
+                Animation animation = animations.remove();
+                if (animation.slots != null) {
+                    for (int slot : animation.slots)
+                        hiddenChanges[slot]--;
+                }
+                changes.add(animation.change);
+            }
+            if (animations.isEmpty())
+                animationTimer.stop();
+        }
+        changes.forEach(Runnable::run);
+    }
+
+    /**
+     * Called on the event dispatch thread, where the waiting changes are shown, so it answers for what the players
+     * see when they press a key.
+     *
+     * @param slot - a slot on the table.
+     * @return - true iff the display shows the card the table has in the slot (no change of it is waiting).
+     */
+    private boolean isShown(int slot) {
+        synchronized (animations) {
+            return hiddenChanges[slot] == 0;
+        }
+    }
+
     @Override
     public void placeCard(int card, int slot) {
-        gamePanel.placeCard(slot, card);
+        show(() -> gamePanel.placeCard(slot, card), new int[]{slot});
     }
 
     @Override
     public void removeCard(int slot) {
-        gamePanel.removeCard(slot);
+        show(() -> gamePanel.removeCard(slot), new int[]{slot});
+    }
+
+    @Override
+    public void placeCards(int[] cards, int[] slots) {
+        show(() -> gamePanel.placeCards(slots, cards), slots);
+    }
+
+    @Override
+    public void removeCards(int[] slots) {
+        show(() -> gamePanel.removeCards(slots), slots);
     }
 
     @Override
     public void placeToken(int player, int slot) {
-        gamePanel.placeToken(player, slot);
+        show(() -> gamePanel.placeToken(player, slot), null);
     }
 
     @Override
     public void removeTokens() {
-        gamePanel.removeTokens();
+        show(gamePanel::removeTokens, null);
     }
 
     @Override
     public void removeTokens(int slot) {
-        gamePanel.removeTokens(slot);
+        show(() -> gamePanel.removeTokens(slot), null);
     }
 
     @Override
     public void removeToken(int player, int slot) {
-        gamePanel.removeToken(player, slot);
+        show(() -> gamePanel.removeToken(player, slot), null);
     }
 
     @Override
@@ -3,7 +3,8 @@ package bguspl.set;
 import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.concurrent.ThreadLocalRandom;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.IntStream;
 
 /**
@@ -12,18 +13,48 @@ import java.util.stream.IntStream;
 public class UtilImpl implements Util {
 
     private final Config config;
+    private final RandomSource random;
+
+    /**
+     * The features of every card, computed once per card dimensions and shared by all the games in the process.
+     */
+    private static final Map<List<Integer>, int[][]> sharedFeatures = new ConcurrentHashMap<>();
+
+    private final int[][] features;
 
     public UtilImpl(Config config) {
+        this(config, new RandomSource(config));
+    }
+
+    public UtilImpl(Config config, RandomSource random) {
         this.config = config;
+        this.random = random;
+        this.features = config.hugeDeck ? new int[0][] // computing the features of each card when needed
+                : sharedFeatures.computeIfAbsent(Arrays.asList(config.featureSize, config.featureCount),
+                key -> computeFeatures(config));
     }
 
-    private void cardToFeatures(int card, int[] features) {
+    private static int[][] computeFeatures(Config config) {
+        int[][] features = new int[config.deckSize][config.featureCount];
+        for (int card = 0; card < config.deckSize; card++)
+            computeFeatures(config, card, features[card]);
+        return features;
+    }
+
+    private static void computeFeatures(Config config, int card, int[] features) {
         for (int i = config.featureCount - 1; i >= 0; --i) {
             features[i] = card % config.featureSize;
             card /= config.featureSize;
         }
     }
 
+    private void cardToFeatures(int card, int[] features) {
+        if (card >= 0 && card < this.features.length)
+            System.arraycopy(this.features[card], 0, features, 0, config.featureCount);
+        else // not a card in the deck (e.g. a placeholder for a missing card)
+            computeFeatures(config, card, features);
+    }
+
     @Override
     public int[] cardToFeatures(int card) {
         int[] features = new int[config.featureCount];
@@ -92,7 +123,7 @@ public class UtilImpl implements Util {
 
     public void spin() {
         if (config.randomSpinMax <= 0) return;
-        long cycles = ThreadLocalRandom.current().nextLong(config.randomSpinMin, config.randomSpinMax);
+        long cycles = random.current().nextLong(config.randomSpinMin, config.randomSpinMax);
         for (int i = 0; i < cycles; ++i)
             Thread.yield();
     }
@@ -0,0 +1,243 @@
+package bguspl.set;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A clock for simulations, whose time only moves when all the game threads wait.
+ * <p>
+ * The game threads register through participant() and wait through the clock. While any of them runs the time stands
+ * still; once all of them wait and one of the waits is timed, the clock's own thread moves the time to the earliest
+ * deadline at once and wakes the threads whose deadline it is. A game with long timeouts therefore runs as fast as its
+ * threads can do their work.
+ * <p>
+ * Every wakeup of a waiting game thread must go through notifyAllOn(), signal() or unpark(), so the clock counts the
+ * woken thread as running before it actually runs. A signal wakes all the threads waiting on the condition, since the clock
+ * cannot tell which of them the lock would wake.
+ */
+public class VirtualClock implements Clock {
+
+    /**
+     * A waiting game thread: on a monitor, on a condition of a lock, or parked (on itself).
+     */
+    private static class Waiter {
+        final Object on;
+        final Lock lock;
+        final boolean parked;
+        final long deadline;
+
+        Waiter(Object on, Lock lock, boolean parked, long deadline) {
+            this.on = on;
+            this.lock = lock;
+            this.parked = parked;
+            this.deadline = deadline;
+        }
+    }
+
+    /**
+     * The current time, in nanoseconds since the epoch (guarded by this).
+     */
+    private long now;
+
+    /**
+     * The number of running game threads, and the waiting ones (guarded by this).
+     */
+    private int participants;
+    private final List<Waiter> waiters = new ArrayList<>();
+
+    /**
+     * The threads unparked while they were not parked, whose next park returns at once (guarded by this).
+     */
+    private final Set<Thread> permits = new HashSet<>();
+
+    /**
+     * The thread moving the time, while there are participants (guarded by this).
+     */
+    private Thread advancer;
+
+    /**
+     * A clock starting at the current system time.
+     */
+    public VirtualClock() {
+        now = TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis());
+    }
+
+    @Override
+    public synchronized long currentTimeMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(now);
+    }
+
+    @Override
+    public synchronized long nanoTime() {
+        return now++; // distinct, so events at the same moment keep their order
+    }
+
+    @Override
+    public Runnable participant(Runnable task) {
+        synchronized (this) {
+            participants++;
+            if (advancer == null) {
+                advancer = new Thread(this::advance, "virtual-clock");
+                advancer.setDaemon(true);
+                advancer.start();
+            }
+        }
+        return () -> {
+            try {
+                task.run();
+            } finally {
+                synchronized (this) {
+                    participants--;
+                    notifyAll();
+                }
+            }
+        };
+    }
+
+    @Override
+    public void waitOn(Object monitor, long millis) throws InterruptedException {
+        Waiter waiter = waiting(monitor, null, false, millis);
+        try {
+            monitor.wait();
+        } finally {
+            woken(waiter);
+        }
+    }
+
+    @Override
+    public void notifyAllOn(Object monitor) {
+        wake(monitor);
+        monitor.notifyAll();
+    }
+
+    @Override
+    public void await(Lock lock, Condition condition, long millis) throws InterruptedException {
+        Waiter waiter = waiting(condition, lock, false, millis);
+        try {
+            condition.await();
+        } finally {
+            woken(waiter);
+        }
+    }
+
+    @Override
+    public void signal(Lock lock, Condition condition) {
+        wake(condition);
+        condition.signalAll();
+    }
+
+    @Override
+    public void park(long millis) throws InterruptedException {
+        Thread current = Thread.currentThread();
+        Waiter waiter;
+        synchronized (this) {
+            if (permits.remove(current)) // unparked before it parked, so it never counted as waiting
+                return;
+            waiter = waiting(current, null, true, millis);
+        }
+        try {
+            LockSupport.park(this);
+        } finally {
+            woken(waiter);
+        }
+        if (Thread.interrupted())
+            throw new InterruptedException();
+    }
+
+    @Override
+    public void unpark(Thread thread) {
+        synchronized (this) {
+            if (!waiters.removeIf(waiter -> waiter.parked && waiter.on == thread))
+                permits.add(thread);
+        }
+        LockSupport.unpark(thread);
+    }
+
+    /**
+     * Counts the calling thread as waiting.
+     */
+    private synchronized Waiter waiting(Object on, Lock lock, boolean parked, long millis) {
+        Waiter waiter = new Waiter(on, lock, parked,
+                millis > 0 ? now + TimeUnit.MILLISECONDS.toNanos(millis) : Long.MAX_VALUE);
+        waiters.add(waiter);
+        notifyAll(); // it may be the last thread to wait
+        return waiter;
+    }
+
+    /**
+     * Counts the calling thread as running again (if it was not already counted as woken).
+     */
+    private synchronized void woken(Waiter waiter) {
+        waiters.remove(waiter);
+    }
+
+    /**
+     * Counts the threads waiting on a monitor or a condition as running.
+     */
+    private synchronized void wake(Object on) {
+        waiters.removeIf(waiter -> waiter.on == on);
+    }
+
+    /**
+     * The code of the clock's thread: moves the time whenever all the participants wait.
+     */
+    private void advance() {
+        while (true) {
+            List<Waiter> due = new ArrayList<>();
+            synchronized (this) {
+                long next;
+                while ((next = nextDeadline()) == Long.MAX_VALUE || waiters.size() < participants) {
+                    if (participants == 0) {
+                        advancer = null;
+                        return;
+                    }
+                    try {
+                        wait();
+                    } catch (InterruptedException ignored) {
+                    }
+                }
+                now = Math.max(now, next);
+                for (Iterator<Waiter> it = waiters.iterator(); it.hasNext(); ) {
+                    Waiter waiter = it.next();
+                    if (waiter.deadline <= now) {
+                        due.add(waiter);
+                        it.remove();
+                    }
+                }
+            }
+            for (Waiter waiter : due) { // not holding the clock: a thread holds its lock when it takes the clock
+                if (waiter.parked) {
+                    LockSupport.unpark((Thread) waiter.on);
+                } else if (waiter.lock == null) {
+                    synchronized (waiter.on) {
+                        waiter.on.notifyAll();
+                    }
+                } else {
+                    waiter.lock.lock();
+                    try {
+                        ((Condition) waiter.on).signalAll();
+                    } finally {
+                        waiter.lock.unlock();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return - the earliest deadline of a waiting thread, or Long.MAX_VALUE if none of them waits with a timeout.
+     */
+    private long nextDeadline() {
+        long next = Long.MAX_VALUE;
+        for (Waiter waiter : waiters)
+            next = Math.min(next, waiter.deadline);
+        return next;
+    }
+}
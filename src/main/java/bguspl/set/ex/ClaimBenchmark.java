@@ -0,0 +1,345 @@
+package bguspl.set.ex;
+
+import bguspl.set.Config;
+import bguspl.set.Env;
+import bguspl.set.GameThreads;
+import bguspl.set.Journal;
+import bguspl.set.RandomSource;
+import bguspl.set.UserInterfaceHeadless;
+import bguspl.set.UtilImpl;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Logger;
+
+/**
+ * Measures how many claims the dealer arbitrates per second, for a growing number of players.
+ * <p>
+ * Every player is driven by a benchmark thread that presses the keys of featureSize random cards (a legal set with a
+ * given probability) through Player.keyPressed, so each claim goes all the way through the player thread,
+ * Dealer.addPotential and the dealer's verdict, on a real table with no delays or freezes. Each slot is pressed once
+ * per claim, after the tokens left from the last one are removed. A claim's latency is the time from its last key
+ * press until the player has its verdict, and every verdict is waited for however long it takes; only the claims left
+ * without a verdict when their game ended are counted apart. Games are played one after the other until the run time
+ * is over, and only the time within the games is counted.
+ * <p>
+ * Lock contention is read from the ThreadMXBean: the number of times and the total time the game and benchmark
+ * threads were blocked entering a monitor or waiting.
+ */
+public class ClaimBenchmark {
+
+    private final Logger logger;
+    private final int players;
+    private final double claimsPerSecond;
+    private final double setRatio;
+    private final long runNanos;
+
+    private final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+
+    /**
+     * The threads running the player and helper threads of the games, which are reused across the games.
+     */
+    private final List<Thread> poolThreads = new ArrayList<>();
+
+    private final ExecutorService pool = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable);
+        synchronized (poolThreads) {
+            poolThreads.add(thread);
+        }
+        return thread;
+    });
+
+    /**
+     * The contention counters of the threads as last collected, by thread id: blocked count and time, waited count and
+     * time (guarded by this).
+     */
+    private final Map<Long, long[]> collected = new HashMap<>();
+    private final long[] contention = new long[4];
+
+    /**
+     * The results of the run.
+     */
+    private long claims;
+    private long unanswered;
+    private long gameNanos;
+    private long games;
+    private final List<long[]> latencies = new ArrayList<>();
+
+    /**
+     * The class constructor.
+     *
+     * @param logger          - the logger of the games.
+     * @param players         - the number of players.
+     * @param claimsPerSecond - the claims each player makes per second, or 0 for as many as possible.
+     * @param setRatio        - the probability of a claim being a legal set.
+     * @param runMillis       - the time to play games for.
+     */
+    public ClaimBenchmark(Logger logger, int players, double claimsPerSecond, double setRatio, long runMillis) {
+        this.logger = logger;
+        this.players = players;
+        this.claimsPerSecond = claimsPerSecond;
+        this.setRatio = setRatio;
+        this.runNanos = TimeUnit.MILLISECONDS.toNanos(runMillis);
+    }
+
+    /**
+     * Plays games until the run time is over.
+     *
+     * @return - a one line summary of the run.
+     */
+    public String run() throws InterruptedException {
+        if (threadBean.isThreadContentionMonitoringSupported())
+            threadBean.setThreadContentionMonitoringEnabled(true);
+        Properties properties = new Properties();
+        properties.setProperty("LogLevel", "OFF");
+        properties.setProperty("HumanPlayers", Integer.toString(players)); // no AI, the benchmark presses the keys
+        properties.setProperty("ComputerPlayers", "0");
+        properties.setProperty("Hints", "False");
+        properties.setProperty("TurnTimeoutSeconds", "60");
+        properties.setProperty("PointFreezeSeconds", "0");
+        properties.setProperty("PenaltyFreezeSeconds", "0");
+        properties.setProperty("TableDelaySeconds", "0");
+        properties.setProperty("EndGamePauseSeconds", "0");
+        Config config = new Config(logger, properties);
+        GameThreads gameThreads = new GameThreads(pool);
+
+        long end = System.nanoTime() + runNanos;
+        for (long seed = 1; System.nanoTime() < end; seed++)
+            play(config, gameThreads, seed, end);
+        pool.shutdown();
+        return summary();
+    }
+
+    /**
+     * Plays a single game, until it ends or the run time is over.
+     */
+    private void play(Config config, GameThreads gameThreads, long seed, long end) throws InterruptedException {
+        RandomSource random = new RandomSource(seed);
+        Env env = new Env(logger, config, new UserInterfaceHeadless(), new UtilImpl(config, random), Journal.DISABLED,
+                random, gameThreads);
+        Table table = new Table(env);
+        Player[] gamePlayers = new Player[players];
+        Dealer dealer = new Dealer(env, table, gamePlayers);
+        for (int i = 0; i < players; i++)
+            gamePlayers[i] = new Player(env, dealer, table, i, true);
+
+        Thread dealerThread = new Thread(() -> {
+            dealer.run();
+            collectContention(Thread.currentThread());
+        }, "dealer");
+        Thread[] pressers = new Thread[players];
+        long[][] gameLatencies = new long[players][];
+        int[] gameClaims = new int[players];
+        int[] gameUnanswered = new int[players];
+        for (int i = 0; i < players; i++) {
+            final int id = i;
+            SplittableRandom presserRandom = random.split();
+            pressers[i] = new Thread(() -> {
+                List<Long> measured = new ArrayList<>();
+                gameUnanswered[id] = press(env, dealer, table, gamePlayers[id], presserRandom, end, measured);
+                gameLatencies[id] = measured.stream().mapToLong(Long::longValue).toArray();
+                gameClaims[id] = measured.size();
+                collectContention(Thread.currentThread());
+            }, "presser-" + i);
+        }
+
+        long start = System.nanoTime();
+        dealerThread.start();
+        dealer.phase.await(GamePhase.OPEN, GamePhase.FINISHED); // the players are ready
+        for (Thread presser : pressers)
+            presser.start();
+        for (Thread presser : pressers)
+            presser.join();
+        long elapsed = System.nanoTime() - start;
+        dealer.terminate();
+        dealerThread.join();
+        synchronized (poolThreads) {
+            for (Thread thread : poolThreads)
+                collectContention(thread);
+        }
+
+        games++;
+        gameNanos += elapsed;
+        for (int i = 0; i < players; i++) {
+            claims += gameClaims[i];
+            unanswered += gameUnanswered[i];
+            latencies.add(gameLatencies[i]);
+        }
+    }
+
+    /**
+     * The code of a benchmark thread: makes claims for a player until the game or the run time is over.
+     *
+     * @param measured - the latencies of the claims that got a verdict, in nanoseconds.
+     * @return - the number of claims left without a verdict when the game ended.
+     */
+    private int press(Env env, Dealer dealer, Table table, Player player, SplittableRandom random, long end,
+                      List<Long> measured) {
+        int featureSize = env.config.featureSize;
+        long interval = claimsPerSecond > 0 ? (long) (1e9 / claimsPerSecond) : 0;
+        long next = System.nanoTime();
+        int unansweredClaims = 0;
+        while (!dealer.phase.is(GamePhase.FINISHED) && System.nanoTime() < end) {
+            long done = player.pressesDone();
+            int queued = 0;
+            // removing the tokens left from a penalty or from presses that made no claim, each pressed once
+            for (long slots = player.selected(); slots != Dealer.ZERO; slots &= slots - 1) {
+                if (player.keyPressed(Long.numberOfTrailingZeros(slots)))
+                    queued++;
+            }
+            if (!awaitPresses(dealer, player, done + queued))
+                break;
+            int[] slots = chooseSlots(env, table, random, featureSize);
+            if (slots == null || player.selected() != Dealer.ZERO) {
+                Thread.yield(); // the table is being dealt, or a token could not be removed yet
+                continue;
+            }
+            if (interval > 0) {
+                long now = System.nanoTime();
+                if (now < next)
+                    LockSupport.parkNanos(next - now);
+                next += interval;
+            }
+            long verdicts = player.verdicts();
+            done = player.pressesDone();
+            queued = 0;
+            long pressed = 0;
+            for (int slot : slots) {
+                pressed = System.nanoTime(); // the last press completes the claim
+                if (!player.keyPressed(slot))
+                    break;
+                queued++;
+            }
+            if (!awaitPresses(dealer, player, done + queued))
+                break;
+            if (!player.claimPending && player.verdicts() == verdicts)
+                continue; // a press was dropped (e.g. its card was being dealt), so there was no claim
+            while (player.verdicts() == verdicts && !dealer.phase.is(GamePhase.FINISHED))
+                Thread.yield();
+            if (player.verdicts() != verdicts)
+                measured.add(System.nanoTime() - pressed);
+            else
+                unansweredClaims++;
+        }
+        return unansweredClaims;
+    }
+
+    /**
+     * Waits until the player is done with the presses queued so far.
+     *
+     * @param done - the value of player.pressesDone() once it is.
+     * @return - false iff the game ended first.
+     */
+    private static boolean awaitPresses(Dealer dealer, Player player, long done) {
+        while (player.pressesDone() < done) {
+            if (dealer.phase.is(GamePhase.FINISHED))
+                return false;
+            Thread.yield();
+        }
+        return true;
+    }
+
+    /**
+     * @return - featureSize distinct slots with cards, forming a legal set with probability setRatio, or null if
+     *         there are not enough cards on the table.
+     */
+    private int[] chooseSlots(Env env, Table table, SplittableRandom random, int featureSize) {
+        Integer[] slotToCard = table.slotToCard.clone();
+        List<Integer> cards = new ArrayList<>();
+        List<Integer> slots = new ArrayList<>();
+        for (int slot = 0; slot < slotToCard.length; slot++) {
+            if (slotToCard[slot] != null) {
+                cards.add(slotToCard[slot]);
+                slots.add(slot);
+            }
+        }
+        if (cards.size() < featureSize)
+            return null;
+        if (random.nextDouble() < setRatio) {
+            List<int[]> sets = env.util.findSets(cards, 1);
+            if (!sets.isEmpty()) {
+                int[] chosen = new int[featureSize];
+                for (int i = 0; i < featureSize; i++)
+                    chosen[i] = slots.get(cards.indexOf(sets.get(0)[i]));
+                return chosen;
+            }
+        }
+        RandomSource.shuffle(slots, random);
+        return slots.subList(0, featureSize).stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * Adds the contention counters of a live thread since they were last collected.
+     *
+     * @param thread - the thread.
+     */
+    private synchronized void collectContention(Thread thread) {
+        ThreadInfo info = threadBean.getThreadInfo(thread.getId());
+        if (info == null) // it ended
+            return;
+        long[] now = {info.getBlockedCount(), Math.max(info.getBlockedTime(), 0), info.getWaitedCount(),
+                Math.max(info.getWaitedTime(), 0)};
+        long[] last = collected.getOrDefault(thread.getId(), new long[now.length]);
+        for (int i = 0; i < now.length; i++)
+            contention[i] += now[i] - last[i];
+        collected.put(thread.getId(), now);
+    }
+
+    /**
+     * @return - a one line summary of the run.
+     */
+    private String summary() {
+        long[] all = latencies.stream().flatMapToLong(Arrays::stream).sorted().toArray();
+        double seconds = gameNanos / 1e9;
+        return String.format("%d players, %s claims/sec each: %d games, %d claims in %.2f s (%.0f claims/sec, "
+                        + "%d unanswered at the end of a game), latency p50 %.1f us p90 %.1f us p99 %.1f us max %.1f us, blocked %d times %d ms, "
+                        + "waited %d times %d ms",
+                players, claimsPerSecond > 0 ? String.format("%.0f", claimsPerSecond) : "unlimited", games, claims,
+                seconds, claims / seconds, unanswered, percentile(all, 0.5), percentile(all, 0.9), percentile(all, 0.99),
+                percentile(all, 1), contention[0], contention[1], contention[2], contention[3]);
+    }
+
+    /**
+     * @return - the given percentile of sorted latencies, in microseconds.
+     */
+    private static double percentile(long[] sorted, double percentile) {
+        if (sorted.length == 0)
+            return 0;
+        int index = (int) Math.ceil(percentile * sorted.length) - 1;
+        return sorted[Math.max(index, 0)] / 1e3;
+    }
+
+    /**
+     * Runs the benchmark for every number of players.
+     *
+     * @param args - the numbers of players (comma separated), and optionally the claims each player makes per second
+     *             (0 for as many as possible), the probability of a claim being a legal set and the seconds to run
+     *             each number of players for.
+     */
+    public static void main(String[] args) throws InterruptedException {
+        if (args.length < 1) {
+            System.out.println("usage: ClaimBenchmark <players,...> [claims/sec per player] [set ratio] [seconds]");
+            return;
+        }
+        Logger logger = Logger.getLogger("SetClaimBenchmark");
+        logger.setUseParentHandlers(false);
+        double claimsPerSecond = args.length > 1 ? Double.parseDouble(args[1]) : 0;
+        double setRatio = args.length > 2 ? Double.parseDouble(args[2]) : 0.1;
+        long runMillis = (long) ((args.length > 3 ? Double.parseDouble(args[3]) : 5) * 1000);
+        for (String players : args[0].split(","))
+            System.out.println(new ClaimBenchmark(logger, Integer.parseInt(players.trim()), claimsPerSecond, setRatio,
+                    runMillis).run());
+    }
+}
@@ -0,0 +1,227 @@
+package bguspl.set.ex;
+
+import bguspl.set.Env;
+import bguspl.set.GameThreads;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Prepares the dealer's next deal on its own thread while the players are playing, so that dealing after a set or a
+ * reshuffle only applies a ready plan.
+ * <p>
+ * A plan is made for the table right after a deal and covers both ways the turn can end: a set is removed (the deck
+ * shuffled, the order the empty slots are filled, and without a countdown the deck already reordered to deal a set for
+ * each set on the table), or the cards are reshuffled (the order the cards return to the deck and the whole next deal).
+ * A plan depends only on the table, the deck and a seed drawn by the dealer, so a plan the dealer makes itself because
+ * the planner did not get to it yet is the same plan, and a game is still reproduced from its seed.
+ */
+public class DealPlanner implements Runnable {
+
+    /**
+     * The next deal, for every way the turn can end.
+     */
+    public static class Plan {
+
+        /**
+         * The table version the plan was made for.
+         */
+        final long tableVersion;
+
+        /**
+         * After a set: the deck shuffled for the deal, and the order the empty slots are filled.
+         */
+        final Deck deck;
+        final int[] slots;
+
+        /**
+         * After a set, without a countdown: by the empty slots once the set is removed (one bit per slot), the shuffled
+         * deck reordered so the deal completes a set.
+         */
+        final Map<Long, Deck> guaranteed;
+
+        /**
+         * After a reshuffle: the order the cards return to the deck, the deck with the cards shuffled for the deal, and
+         * the order the slots are filled.
+         */
+        final int[] returned;
+        final Deck reshuffled;
+        final int[] reshuffledSlots;
+
+        private Plan(Env env, Integer[] slotToCard, long tableVersion, Deck current, long seed) {
+            SplittableRandom random = new SplittableRandom(seed);
+            boolean timed = env.config.turnTimeoutMillis > 0;
+            this.tableVersion = tableVersion;
+            List<Integer> tableCards = new ArrayList<>();
+            Map<Integer, Integer> cardToSlot = new HashMap<>();
+            long empty = 0;
+            for (int slot = 0; slot < slotToCard.length; slot++) {
+                if (slotToCard[slot] == null) {
+                    empty |= 1L << slot;
+                } else {
+                    tableCards.add(slotToCard[slot]);
+                    cardToSlot.put(slotToCard[slot], slot);
+                }
+            }
+
+            deck = new Deck(current, random.split());
+            deck.shuffle();
+            slots = permutation(env.config.tableSize, random);
+            guaranteed = new HashMap<>();
+            if (!timed) {
+                List<int[]> sets = env.util.findSets(tableCards, Integer.MAX_VALUE);
+                guaranteed.put(empty, guarantee(deck, tableCards, !sets.isEmpty(), random)); // no card was removed
+                for (int[] set : sets) {
+                    List<Integer> remaining = new ArrayList<>(tableCards);
+                    long removed = empty;
+                    for (int card : set) {
+                        remaining.remove(Integer.valueOf(card));
+                        removed |= 1L << cardToSlot.get(card);
+                    }
+                    guaranteed.put(removed, guarantee(deck, remaining, hasDisjointSet(sets, set), random));
+                }
+            }
+
+            returned = permutation(env.config.tableSize, random);
+            reshuffled = new Deck(current, random.split());
+            for (int slot : returned) {
+                if (slotToCard[slot] != null)
+                    reshuffled.add(slotToCard[slot]);
+            }
+            reshuffled.shuffle();
+            if (!timed)
+                reshuffled.guaranteeSet(Collections.emptyList());
+            reshuffledSlots = permutation(env.config.tableSize, random);
+        }
+
+        /**
+         * @param hasSet - true iff the cards already contain a legal set.
+         * @return - a copy of the deck, reordered (unless the cards have a set) so that dealing it next to the cards
+         * completes a set.
+         */
+        private static Deck guarantee(Deck deck, List<Integer> tableCards, boolean hasSet, SplittableRandom random) {
+            Deck copy = new Deck(deck, random.split());
+            if (!hasSet)
+                copy.guaranteeSet(tableCards);
+            return copy;
+        }
+
+        /**
+         * @return - true iff one of the sets has none of the cards of the given set (so it is left once that set is
+         * removed).
+         */
+        private static boolean hasDisjointSet(List<int[]> sets, int[] removed) {
+            for (int[] set : sets) {
+                boolean disjoint = true;
+                for (int card : set) {
+                    for (int other : removed)
+                        disjoint &= card != other;
+                }
+                if (disjoint)
+                    return true;
+            }
+            return false;
+        }
+
+        /**
+         * @return - the numbers 0 to size - 1 in a random order.
+         */
+        private static int[] permutation(int size, SplittableRandom random) {
+            int[] order = new int[size];
+            for (int i = 0; i < size; i++)
+                order[i] = i;
+            for (int i = size; i > 1; i--) {
+                int j = random.nextInt(i);
+                int swapped = order[i - 1];
+                order[i - 1] = order[j];
+                order[j] = swapped;
+            }
+            return order;
+        }
+    }
+
+    /**
+     * The game environment object.
+     */
+    private final Env env;
+
+    /**
+     * The plan to make next, or null if it was taken (guarded by this).
+     */
+    private FutureTask<Plan> pending;
+
+    private volatile boolean terminate;
+    GameThreads.Task task;
+
+    /**
+     * The class constructor.
+     *
+     * @param env - the environment object.
+     */
+    public DealPlanner(Env env) {
+        this.env = env;
+    }
+
+    /**
+     * Starts the planner thread.
+     */
+    public void start() {
+        task = env.threads.start(env.clock.participant(this), "planner");
+    }
+
+    /**
+     * Asks for the next deal to be planned (returns at once).
+     * The plan is made by the planner thread, or by the first caller of run() on the returned task if the planner did
+     * not start it yet (e.g. when the planner thread is not running).
+     *
+     * @param slotToCard   - a copy of the card in each slot.
+     * @param tableVersion - the version of the table.
+     * @param deck         - the deck (only read, and not changed until the plan is done).
+     * @param seed         - the seed of the plan's random stream.
+     * @return - the plan to be.
+     */
+    public FutureTask<Plan> plan(Integer[] slotToCard, long tableVersion, Deck deck, long seed) {
+        FutureTask<Plan> plan = new FutureTask<>(() -> new Plan(env, slotToCard, tableVersion, deck, seed));
+        synchronized (this) {
+            pending = plan;
+            env.clock.notifyAllOn(this);
+        }
+        return plan;
+    }
+
+    @Override
+    public void run() {
+        env.logger.info("Thread " + Thread.currentThread().getName() + " starting.");
+        while (!terminate) {
+            FutureTask<Plan> next;
+            synchronized (this) {
+                while (pending == null && !terminate) {
+                    try {
+                        env.clock.waitOn(this, 0);
+                    } catch (InterruptedException ignored) {
+                    }
+                }
+                next = pending;
+                pending = null;
+            }
+            if (next != null)
+                next.run(); // does nothing if the dealer already made the plan
+        }
+        env.logger.info("Thread " + Thread.currentThread().getName() + " terminated.");
+    }
+
+    /**
+     * Asks the planner thread to stop (returns at once).
+     */
+    public void stop() {
+        terminate = true;
+        synchronized (this) {
+            env.clock.notifyAllOn(this);
+        }
+    }
+}
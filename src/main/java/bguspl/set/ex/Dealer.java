@@ -1,15 +1,20 @@
 package bguspl.set.ex;
 
 import bguspl.set.Env;
+import bguspl.set.Journal;
+import bguspl.set.ShutdownCoordinator;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.PriorityQueue;
 import java.util.Queue;
-import java.util.stream.Collectors;
-import java.util.stream.IntStream;
-import java.util.stream.Stream;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.Phaser;
 
 /**
  * This class manages the dealer's threads and data
@@ -28,39 +33,102 @@ public class Dealer implements Runnable {
     private final Player[] players;
 
     /**
-     * The list of card ids that are left in the dealer's deck.
+     * The cards that are left in the dealer's deck (replaced by the planned deck at every deal).
      */
-    private final List<Integer> deck;
+    private Deck deck;
 
     /**
      * True iff game should be terminated.
      */
     private volatile boolean terminate;
 
+    /**
+     * True iff there is a legal set on the table (only kept without a countdown).
+     */
+    private boolean tableHasSet;
+
+    /**
+     * True iff there is a legal set in the deck, or without a countdown in the deck and the table together.
+     * Both flags are updated whenever the table or the deck changes, so the dealer's loops do not search for sets.
+     */
+    private boolean setLeft = true;
+
     /**
      * The time when the dealer needs to reshuffle the deck due to turn timeout.
      */
     private long reshuffleTime = Long.MAX_VALUE;
 
-    public boolean availableForActions;
+    /**
+     * The time of the last reshuffle or collected set (shown as the elapsed time when config.turnTimeoutMillis == 0).
+     */
+    private long lastActionTime;
 
-    public Queue<Player> potentialSets;
+    /**
+     * The dealer's own random stream (seeding the plan of every deal).
+     */
+    private final SplittableRandom random;
+
+    /**
+     * Prints the sets on the table after every deal (null if hints are turned off).
+     */
+    private final HintService hints;
+
+    /**
+     * Counts down the players' freezes.
+     */
+    private final FreezeScheduler freezes;
+
+    /**
+     * Plans the next deal while the players are playing.
+     */
+    private final DealPlanner planner;
+
+    /**
+     * The plan of the next deal, made for the table as it was dealt last (null before the first deal).
+     */
+    private FutureTask<DealPlanner.Plan> nextPlan;
+
+    /**
+     * The plan the cards were last reshuffled by, until the deal that follows the reshuffle (null otherwise).
+     */
+    private DealPlanner.Plan reshuffled;
+
+    /**
+     * Stops the game threads the dealer started, within shutdownTimeoutMillis.
+     */
+    private final ShutdownCoordinator shutdown;
+
+    /**
+     * The phase of the game: the players may only act while it is OPEN.
+     */
+    public final PhaseController phase;
 
-    public List<int[]> threadOrderList;
+    /**
+     * The players waiting for their sets to be checked, the earliest claim first (guarded by itself).
+     */
+    public Queue<Player> potentialSets;
 
     public List<Integer> cardsToInsert;
     public static final int ONE = 1;
     public static final int ZERO = 0;
-    public static final long tenMiliSec = 10;
+    public static final long shutdownTimeoutMillis = 2000;
     public Dealer(Env env, Table table, Player[] players) {
         this.env = env;
         this.table = table;
         this.players = players;
-        deck = IntStream.range(0, env.config.deckSize).boxed().collect(Collectors.toList());
-        potentialSets = new LinkedList<>();
-        availableForActions = false;
-        threadOrderList = new LinkedList<>();
+        phase = new PhaseController(GamePhase.DEALING, env.clock);
+        lastActionTime = env.clock.currentTimeMillis();
+        // claim times are nanoTime() values, which may start anywhere (even near Long.MAX_VALUE) and wrap around, so
+        // only their difference is meaningful: comparing the values themselves would misorder claims across a wrap
+        potentialSets = new PriorityQueue<>((a, b) -> Long.compare(a.claimTime - b.claimTime, 0));
+        phase.addListener((from, to) -> env.logger.fine("game phase changed from " + from + " to " + to));
         cardsToInsert = new LinkedList<>();
+        random = env.random.split();
+        deck = new Deck(env.config, env.util, random);
+        hints = env.config.hints ? new HintService(env, table) : null;
+        freezes = new FreezeScheduler(env);
+        planner = new DealPlanner(env);
+        shutdown = new ShutdownCoordinator(env.logger, shutdownTimeoutMillis);
     }
 
     /**
@@ -70,22 +138,34 @@ public class Dealer implements Runnable {
     public void run() {
         env.logger.info("Thread " + Thread.currentThread().getName() + " starting.");
         System.out.println("Thread " + Thread.currentThread().getName() + " starting.");
-        placeCardsOnTable();
-        availableForActions = false;
+        if (hints != null) {
+            hints.start();
+            shutdown.add(hints.task, hints::stop);
+        }
+        freezes.start();
+        shutdown.add(freezes.task, freezes::stop);
+        planner.start();
+        shutdown.add(planner.task, planner::stop);
+        long seed = env.random.seed();
+        env.journal.record(Journal.Event.SEED, (int) seed, (int) (seed >>> 32));
+        placeCardsOnTable(); // the game stays DEALING until all the players are ready
+        Phaser startup = new Phaser(ONE); // the dealer, and every player and AI thread once started
         for (int i = ZERO; i < env.config.players; i++) {
-            Thread curr = new Thread(players[i], env.config.playerNames[i]);
-            curr.start();
-            try {
-            Thread.currentThread().sleep(Player.miliSec);
-            } catch (InterruptedException e) {
-            }
+            players[i].start(startup, env.config.playerNames[i]);
+        }
+        startup.arriveAndAwaitAdvance(); // all the threads were started together and are ready
+        for (Player p : players) { // by the order they were started, to be stopped in the reversed order
+            shutdown.add(p.playerTask, p::stop);
+            shutdown.add(p.aiTask, p::stop);
         }
-        availableForActions = true;
+        openTable();
         while (!shouldFinish()) {
             placeCardsOnTable();
+            openTable();
             timerLoop();
             removeAllCardsFromTable();
         }
+        phase.set(GamePhase.FINISHED);
         announceWinners();
         terminate();
         env.logger.info("Thread " + Thread.currentThread().getName() + " terminated.");
@@ -97,7 +177,7 @@ public class Dealer implements Runnable {
      * not time out.
      */
     private void timerLoop() {
-        while (!shouldFinish() && System.currentTimeMillis() < reshuffleTime) {
+        while (!shouldFinish() && env.clock.currentTimeMillis() < reshuffleTime && (timed() || tableHasSet)) {
             updateTimerDisplay(false);
             sleepUntilWokenOrTimeout();
             removeCardsFromTable();
@@ -109,14 +189,11 @@ public class Dealer implements Runnable {
      */
     public void terminate() {
         terminate = true;
-        for (int i = players.length - ONE; i >= ZERO; i--) { // reversed order
-            try {
-                players[i].terminate(); // first closing the players thread
-                players[i].checkThread().interrupt();
-                players[i].checkThread().join();
-            } catch (InterruptedException e) {
-            }
+        phase.set(GamePhase.FINISHED); // releasing the threads waiting for the game to open
+        synchronized (this) {
+            env.clock.notifyAllOn(this); // the dealer may be waiting without a timeout
         }
+        shutdown.shutdown(); // the window and the dealer thread may both terminate the game
     }
 
     /**
@@ -125,107 +202,177 @@ public class Dealer implements Runnable {
      * @return true iff the game should be finished.
      */
     private boolean shouldFinish() {
-        return terminate || env.util.findSets(deck, ONE).size() == ZERO;
+        return terminate || !setLeft;
+    }
+
+    /**
+     * Finds out whether legal sets are left, after the table or the deck changed.
+     *
+     * @post - tableHasSet and setLeft are up to date.
+     */
+    private void updateSetsLeft() {
+        if (timed()) {
+            setLeft = deck.hasSet(Collections.emptyList());
+        } else { // without a countdown the cards on the table count as well
+            List<Integer> cards = tableCards();
+            tableHasSet = !env.util.findSets(cards, ONE).isEmpty();
+            setLeft = tableHasSet || deck.hasSet(cards);
+        }
+    }
+
+    /**
+     * @return - true iff the turn has a countdown (config.turnTimeoutMillis > 0), after which the deck is reshuffled.
+     */
+    private boolean timed() {
+        return env.config.turnTimeoutMillis > ZERO;
+    }
+
+    /**
+     * @return - the cards on the table.
+     */
+    private List<Integer> tableCards() {
+        List<Integer> cards = new ArrayList<>(env.config.tableSize);
+        for (Integer card : table.slotToCard)
+            if (card != null)
+                cards.add(card);
+        return cards;
     }
 
     /**
      * Checks if any cards should be removed from the table and returns them to the
      * deck.
+     * All the pending claims are checked in one batch, in the order the players completed them, so when claims
+     * overlap the earliest one wins and the later ones are discarded (and their players released) right away.
+     */
+    void removeCardsFromTable() {
+        while (checkNextClaim()) {
+            // checking the claims until none is pending
+        }
+    }
+
+    /**
+     * Checks the earliest pending claim, awarding a point or a penalty, or discarding it if its cards are no longer
+     * on the table.
+     *
+     * @return - true iff a claim was pending.
+     *
+     * @post - the claim is no longer pending and its player is no longer waiting for the dealer.
      */
-    private void removeCardsFromTable() {
+    boolean checkNextClaim() {
         boolean realSet = false;
         boolean correlate = true; // checking that the cards on the table are the same cards that the player
                                   // placed his tokens on
-        Integer[] copySlots = new Integer[env.config.featureSize];
-        if (!potentialSets.isEmpty()) {
-            Player p = potentialSets.remove();
-            Integer[] copyCards = Arrays.copyOf(p.cards, env.config.featureSize); // current player cards
-            copySlots = Arrays.copyOf(p.slots, env.config.featureSize);
-            correlate = !Stream.of(copySlots).anyMatch(x -> x == null);
-            int[] copyCardsTest = new int[copyCards.length];
-            for(int i=ZERO;i<copyCardsTest.length;i++) {
-                if(copyCards[i] != null) {
-                    copyCardsTest[i] = copyCards[i];
-                } else {
-                    copyCardsTest[i] = Player.empty;
-                }
+        Player p;
+        synchronized (potentialSets) {
+            p = potentialSets.poll();
+        }
+        if (p != null) {
+            GameEvents.Span event = GameEvents.claimChecking();
+            long claimed = p.selected(); // the player is waiting, so its selection only shrinks if cards were removed
+            if (p.claimVersion != Table.NO_VERSION && p.claimVersion == table.version()) {
+                realSet = p.claimIsSet; // no card changed since the player checked its claim
+            } else {
+                correlate = Long.bitCount(claimed) == env.config.featureSize && p.onTable(claimed);
+                if (correlate)
+                    realSet = env.util.testSet(p.selectedCards(claimed)); // checking if the cards are a set
             }
-            realSet = env.util.testSet(copyCardsTest); // checking if the cards are a set
             if (correlate) { // if the chosen cards are still on the table
                 if (!realSet) { // not a set
+                    env.journal.record(Journal.Event.VERDICT, p.id, Journal.VERDICT_PENALTY);
                     p.penalty();
-                    synchronized (p) {
-                        p.pressedQueue.clear();
-                    }
+                    GameEvents.claimVerified(event, p.id, claimed, "penalty");
                 } else {
+                    env.journal.record(Journal.Event.VERDICT, p.id, Journal.VERDICT_POINT);
                     p.point();
-                    synchronized (p) {
-                        p.pressedQueue.clear();
+                    phase.set(GamePhase.COLLECTING);
+                    int[] removedSlots = new int[Long.bitCount(claimed)];
+                    int count = ZERO;
+                    for (long slots = claimed; slots != ZERO; slots &= slots - ONE) {
+                        removedSlots[count++] = Long.numberOfTrailingZeros(slots);
                     }
-                    availableForActions = false;
-                    for (int i = ZERO; i < copySlots.length; i++) {
-                        if (copySlots[i] != null) { // checking that we can remove the card from the table
-                            synchronized (this) {
-                                env.ui.removeTokens(copySlots[i]);
-                                table.removeCard(copySlots[i]);
-                            }
+                    synchronized (this) { // no token is placed while the cards are removed
+                        for (int slot : removedSlots) {
+                            env.ui.removeTokens(slot);
                         }
+                        table.removeCards(removedSlots);
                         for (Player curr : players) {
-                            for (int j = ZERO; j < curr.slots.length; j++) {
-                                if (curr.slots[j] == copySlots[i]) {
-                                    curr.slots[j] = null;
-                                    curr.cards[j] = null;
-                                    curr.countCards--;
-                                }
-                            }
+                            curr.deselect(claimed); // the tokens on the removed cards are gone
                         }
                     }
                     placeCardsOnTable();
+                    openTable();
+                    GameEvents.claimVerified(event, p.id, claimed, "point");
                 }
             } else { // the case that one of the current players cards has changed before it was
                      // checked
-                synchronized (p) {
-                    p.pressedQueue.clear();
-                }
+                env.journal.record(Journal.Event.VERDICT, p.id, Journal.VERDICT_DISCARDED);
+                p.discard(); // releasing the player now rather than after the next deal
+                GameEvents.claimVerified(event, p.id, claimed, "discarded");
             }
         }
+        return p != null;
     }
 
     /**
      * Check if any cards can be removed from the deck and placed on the table.
+     * The game is DEALING while cards are placed; it is left for the caller to open the table.
      */
     public void placeCardsOnTable() {
-        Collections.shuffle(deck); // shuffling the deck
-        boolean resetNeeded = false; // will be used in order to know if we need to reset the countdown
-        List<Integer> permutation = new LinkedList<>();
-        for (int i = ZERO; i < env.config.tableSize; i++) {
-            permutation.add(i, i);
+        int[] permutation; // determines the cards order on the table
+        if (reshuffled != null) { // the deck was already replaced by the reshuffled one
+            permutation = reshuffled.reshuffledSlots;
+            reshuffled = null;
+        } else {
+            DealPlanner.Plan plan = takePlan(false);
+            permutation = plan.slots;
+            long empty = ZERO;
+            for (int i = ZERO; i < env.config.tableSize; i++) {
+                if (table.slotToCard[i] == null)
+                    empty |= 1L << i;
+            }
+            deck = timed() ? plan.deck : plan.guaranteed.getOrDefault(empty, plan.deck);
+            if (!timed() && !plan.guaranteed.containsKey(empty)) { // not a set the plan knew of
+                List<Integer> cards = tableCards();
+                if (env.util.findSets(cards, ONE).isEmpty())
+                    deck.guaranteeSet(cards);
+            }
         }
-        Collections.shuffle(permutation); // determines the cards order on the table
-        while (!permutation.isEmpty()) {
-            int i = permutation.remove(ZERO);
+        boolean resetNeeded = false; // will be used in order to know if we need to reset the countdown
+        for (int i : permutation) {
             if (!deck.isEmpty()) {
                 if (table.slotToCard[i] == null) {
-                    cardsToInsert.add(deck.remove(ZERO));
+                    cardsToInsert.add(deck.deal());
                     cardsToInsert.add(i);
-                    insertCards();
-                    // table.placeCard(deck.remove(0), i); // placing them after shuffling
                     resetNeeded = true;
                 }
             }
         }
+        if (!cardsToInsert.isEmpty())
+            phase.set(GamePhase.DEALING);
+        insertCards(); // placing them all at once after shuffling
+        updateSetsLeft();
+        nextPlan = planner.plan(table.slotToCard.clone(), table.version(), deck, random.nextLong());
         if (resetNeeded) {
             updateTimerDisplay(true);
         }
-        if(env.config.hints) {
-            table.hints();
-            System.out.println("_______________________");
+        if (hints != null) {
+            hints.show(table.slotToCard.clone()); // printed by the hints thread
+        }
     }
-        availableForActions = true;
-        for (Player p : players) {
-            synchronized (p) {
-                p.notifyAll();
-            }
+
+    /**
+     * Lets the players place tokens and claim sets again, once the dealer's task is done.
+     */
+    void openTable() {
+        phase.set(GamePhase.OPEN);
+    }
+
+    /**
+     * @return - true iff there are claims waiting to be checked.
+     */
+    private boolean hasPendingClaims() {
+        synchronized (potentialSets) {
+            return !potentialSets.isEmpty();
         }
     }
 
@@ -234,17 +381,28 @@ public class Dealer implements Runnable {
      * purpose.
      */
     private void sleepUntilWokenOrTimeout() {
-        if (reshuffleTime - System.currentTimeMillis() <= env.config.turnTimeoutWarningMillis) {
+        if (!timed()) {
+            try {
+                synchronized (this) {
+                    if (env.config.turnTimeoutMillis == ZERO) // waking up when the elapsed seconds change
+                        env.clock.waitOn(this,
+                                Player.sec - (env.clock.currentTimeMillis() - lastActionTime) % Player.sec);
+                    else if (!terminate && !hasPendingClaims()) // nothing to display, waiting for a claim
+                        env.clock.waitOn(this, 0);
+                }
+            } catch (InterruptedException ignored) {
+            }
+        } else if (reshuffleTime - env.clock.currentTimeMillis() <= env.config.turnTimeoutWarningMillis) {
             try {
                 synchronized (this) {
-                    wait(Player.miliSec);
+                    env.clock.waitOn(this, Player.miliSec);
                 }
             } catch (InterruptedException ignored) {
             }
         } else {
             try {
                 synchronized (this) {
-                    wait(Player.sec);
+                    env.clock.waitOn(this, Player.sec);
                 }
             } catch (InterruptedException ignored) {
             }
@@ -256,42 +414,51 @@ public class Dealer implements Runnable {
      * Reset and/or update the countdown and the countdown display.
      */
     private void updateTimerDisplay(boolean reset) {
+        if (!timed()) {
+            if (reset)
+                lastActionTime = env.clock.currentTimeMillis();
+            if (env.config.turnTimeoutMillis == ZERO)
+                env.ui.setElapsed(env.clock.currentTimeMillis() - lastActionTime);
+            return;
+        }
         if (reset) {
-            reshuffleTime = System.currentTimeMillis() + env.config.turnTimeoutMillis;
+            reshuffleTime = env.clock.currentTimeMillis() + env.config.turnTimeoutMillis;
         }
         boolean warn = false;
-        if (reshuffleTime - System.currentTimeMillis() <= env.config.turnTimeoutWarningMillis) {
+        if (reshuffleTime - env.clock.currentTimeMillis() <= env.config.turnTimeoutWarningMillis) {
             warn = true;
         }
         env.ui.setCountdown(
-                Math.max(0, reshuffleTime - System.currentTimeMillis()),
+                Math.max(0, reshuffleTime - env.clock.currentTimeMillis()),
                 warn);
     }
 
     /**
      * Returns all the cards from the table to the deck.
      */
-    private void removeAllCardsFromTable() {
+    void removeAllCardsFromTable() {
         if (!shouldFinish()) {
-            availableForActions = false;
-            List<Integer> permutation = new LinkedList<>();
-            for (int i = ZERO; i < env.config.tableSize; i++) {
-                permutation.add(i, i);
-            }
-            Collections.shuffle(permutation);
-            while (!permutation.isEmpty()) {
-                int i = permutation.remove(ZERO); // removing the cards from the table
+            phase.set(GamePhase.RESHUFFLING);
+            GameEvents.Span event = GameEvents.reshuffling();
+            env.journal.record(Journal.Event.RESHUFFLE, deck.size());
+            reshuffled = takePlan(true);
+            int[] slots = new int[env.config.tableSize];
+            int count = ZERO;
+            for (int i : reshuffled.returned) { // removing the cards from the table
                 if (table.slotToCard[i] != null) {
-                    deck.add(table.slotToCard[i]);
-                    env.ui.removeTokens(i);
-                    table.removeCard(i);
+                    slots[count++] = i;
                 }
             }
+            deck = reshuffled.reshuffled; // with the removed cards, shuffled
+            synchronized (this) {
+                env.ui.removeTokens();
+                table.removeCards(Arrays.copyOf(slots, count));
+            }
             for (Player curr : players) {
-                synchronized (curr) {
-                    curr.clearCache(); // removing the tested cards
-                }
+                curr.clearCache(); // removing the tested cards
             }
+            updateSetsLeft();
+            GameEvents.reshuffled(event, count, deck.size());
         }
     }
 
@@ -330,13 +497,65 @@ public class Dealer implements Runnable {
      */
 
     public void addPotential(Player p) {
+        queueClaim(p);
+        synchronized (this) {
+            env.clock.notifyAllOn(this);
+        }
+    }
+
+    /**
+     * Adds a claim to the pending claims and records it in the game journal, in the order the claims are queued.
+     *
+     * @param p - the claiming player.
+     */
+    void queueClaim(Player p) {
         synchronized (potentialSets) {
+            long slots = p.selected();
+            env.journal.record(p.claimTime, Journal.Event.CLAIM, p.id, (int) slots, (int) (slots >>> 32));
             potentialSets.add(p);
         }
-        synchronized (this) {
-            notifyAll();
+    }
+    /**
+     * Freezes a player until a deadline, counted down by the freezes thread.
+     *
+     * @param p        - the frozen player.
+     * @param deadline - the env.clock time in milliseconds at which the freeze ends.
+     */
+    void freeze(Player p, long deadline) {
+        freezes.freeze(p, deadline);
+    }
+
+    /**
+     * Takes the plan of the next deal, waiting for the planner to finish it or making it on the dealer thread if the
+     * planner did not start it yet.
+     *
+     * @param sameTable - true iff the plan must be for the table as it is now (as when reshuffling), rather than for
+     *                  the table as it was dealt last.
+     * @return - the plan.
+     */
+    private DealPlanner.Plan takePlan(boolean sameTable) {
+        if (nextPlan == null) // the first deal
+            nextPlan = planner.plan(table.slotToCard.clone(), table.version(), deck, random.nextLong());
+        nextPlan.run();
+        DealPlanner.Plan plan = null;
+        boolean interrupted = false;
+        while (plan == null) {
+            try {
+                plan = nextPlan.get();
+            } catch (InterruptedException e) {
+                interrupted = true; // the planner finishes a plan it started, so it is waited for
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("planning the next deal failed", e.getCause());
+            }
         }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+        nextPlan = null;
+        if (sameTable && plan.tableVersion != table.version())
+            return takePlan(true);
+        return plan;
     }
+
     /**
      * inserting the cards to the table
      * 
@@ -344,11 +563,17 @@ public class Dealer implements Runnable {
      *
      * @param - none
      * 
-     *  @post - the card placed is on the table, in the assigned slot.
+     *  @post - the cards placed are on the table, each in its assigned slot (placed together, with one delay).
      */
     public void insertCards() {
-        while (!cardsToInsert.isEmpty()) {
-            table.placeCard(cardsToInsert.remove(ZERO), cardsToInsert.remove(ZERO));
+        int[] cards = new int[cardsToInsert.size() / 2];
+        int[] slots = new int[cards.length];
+        for (int i = ZERO; i < cards.length; i++) {
+            cards[i] = cardsToInsert.remove(ZERO);
+            slots[i] = cardsToInsert.remove(ZERO);
+        }
+        synchronized (this) { // all the cards appear at once
+            table.placeCards(cards, slots);
         }
     }
 }
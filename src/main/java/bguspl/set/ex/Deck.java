@@ -0,0 +1,305 @@
+package bguspl.set.ex;
+
+import bguspl.set.Config;
+import bguspl.set.RandomSource;
+import bguspl.set.Util;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * The cards left in the dealer's deck.
+ * <p>
+ * Normally the deck is a list of all its cards, shuffled before every deal and dealt from the front.
+ * With config.hugeDeck the deck is only a bitset of the cards that are in it, and cards are drawn at random when they
+ * are dealt. Only the few cards the dealer looks ahead at are kept in a list, so the memory used does not grow with
+ * the number of cards beyond one bit per card.
+ *
+ * @inv size() == the number of cards c for which contains(c)
+ */
+public class Deck {
+
+    /**
+     * The number of random draws tried before taking the next card in the bitset instead.
+     */
+    private static final int RANDOM_DRAWS = 64;
+
+    /**
+     * The number of cards first searched for a set in a huge deck (doubled until a set is found).
+     */
+    private static final int SET_SEARCH_WINDOW = 64;
+
+    /**
+     * Returned by the set completion search when no card completes a set.
+     */
+    static final int NONE = -1;
+
+    private final Config config;
+    private final Util util;
+    private final SplittableRandom random;
+    private final boolean huge;
+
+    /**
+     * The cards in the deck.
+     */
+    private final BitSet cards;
+
+    /**
+     * The cards in the order they are dealt: all of them, or with a huge deck only the cards already drawn ahead.
+     */
+    private final List<Integer> order;
+
+    private int size;
+
+    /**
+     * The class constructor, creating a full deck.
+     *
+     * @param config - the game configuration.
+     * @param util   - the game utilities (for finding sets).
+     * @param random - the random stream used to shuffle the deck and draw cards.
+     */
+    public Deck(Config config, Util util, SplittableRandom random) {
+        this.config = config;
+        this.util = util;
+        this.random = random;
+        this.huge = config.hugeDeck;
+        cards = new BitSet(config.deckSize);
+        cards.set(0, config.deckSize);
+        size = config.deckSize;
+        if (huge) {
+            order = new ArrayList<>();
+        } else {
+            order = new ArrayList<>(config.deckSize);
+            for (int card = 0; card < config.deckSize; card++)
+                order.add(card);
+        }
+    }
+
+    /**
+     * Creates a copy of a deck, with the same cards in the same order, that draws from its own random stream.
+     *
+     * @param other  - the deck to copy.
+     * @param random - the random stream used to shuffle the copy and draw cards.
+     */
+    public Deck(Deck other, SplittableRandom random) {
+        this.config = other.config;
+        this.util = other.util;
+        this.random = random;
+        this.huge = other.huge;
+        cards = (BitSet) other.cards.clone();
+        order = new ArrayList<>(other.order);
+        size = other.size;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @param card - a card.
+     * @return - true iff the card is in the deck.
+     */
+    public boolean contains(int card) {
+        return card >= 0 && card < config.deckSize && cards.get(card);
+    }
+
+    /**
+     * Shuffles the deck (with a huge deck, the cards drawn ahead are returned so they can be drawn again at random).
+     */
+    public void shuffle() {
+        if (huge)
+            order.clear();
+        else
+            RandomSource.shuffle(order, random);
+    }
+
+    /**
+     * @param index - the number of cards dealt before it.
+     * @return - the card that will be dealt after index other cards.
+     * @pre - index < size()
+     */
+    public int get(int index) {
+        while (order.size() <= index)
+            order.add(drawRandom());
+        return order.get(index);
+    }
+
+    /**
+     * Removes the next card from the deck.
+     *
+     * @return - the card.
+     * @pre - !isEmpty()
+     */
+    public int deal() {
+        int card = get(0);
+        order.remove(0);
+        cards.clear(card);
+        size--;
+        return card;
+    }
+
+    /**
+     * Returns a card to the deck.
+     *
+     * @param card - the card.
+     * @pre - !contains(card)
+     */
+    public void add(int card) {
+        cards.set(card);
+        size++;
+        if (!huge)
+            order.add(card);
+    }
+
+    /**
+     * Changes the order of the deck so that a card is dealt after index other cards.
+     *
+     * @param card  - a card in the deck.
+     * @param index - the number of cards to be dealt before it.
+     * @pre - contains(card) && index < size()
+     */
+    public void moveTo(int card, int index) {
+        order.remove(Integer.valueOf(card)); // with a huge deck it may not be drawn ahead yet
+        if (index > 0)
+            get(index - 1);
+        order.add(index, card);
+    }
+
+    /**
+     * Draws a card that is in the deck but was not drawn ahead yet, at random.
+     */
+    private int drawRandom() {
+        for (int i = 0; i < RANDOM_DRAWS; i++) {
+            int card = random.nextInt(config.deckSize);
+            if (cards.get(card) && !order.contains(card))
+                return card;
+        }
+        int card = cards.nextSetBit(random.nextInt(config.deckSize)); // a sparse deck, taking the next card
+        while (card < 0 || order.contains(card))
+            card = cards.nextSetBit(card < 0 ? 0 : card + 1);
+        return card;
+    }
+
+    /**
+     * Checks if the cards in the deck together with some other cards contain a legal set.
+     * A huge deck is searched in growing windows of its cards, so the search is short while sets are common.
+     *
+     * @param others - cards that are not in the deck.
+     * @return - true iff there is a legal set.
+     */
+    public boolean hasSet(List<Integer> others) {
+        if (!huge) {
+            List<Integer> all = new ArrayList<>(order);
+            all.addAll(others);
+            return !util.findSets(all, 1).isEmpty();
+        }
+        List<Integer> window = new ArrayList<>(others);
+        int card = cards.nextSetBit(0);
+        for (int limit = SET_SEARCH_WINDOW; ; limit *= 2) {
+            while (card >= 0 && window.size() < others.size() + limit) {
+                window.add(card);
+                card = cards.nextSetBit(card + 1);
+            }
+            if (!util.findSets(window, 1).isEmpty())
+                return true;
+            if (card < 0) // the whole deck was searched
+                return false;
+        }
+    }
+
+    /**
+     * Reorders the front of the shuffled deck so that the cards about to fill the empty slots complete a legal set,
+     * if a card left in the deck completes one with the cards before it.
+     * The cards about to be placed are considered one at a time: for each, the cards that will be on the table
+     * before it are searched for featureSize - 1 cards whose completing card is still in the deck, and if one is found
+     * it takes that place in the deck. Each step only looks at the subsets that include the latest card, so the table
+     * is never scanned twice. Sets that need more than one card from the deck out of its dealing order are not
+     * searched for.
+     *
+     * @param tableCards - the cards on the table.
+     * @pre - there is no legal set in tableCards (the caller already knows it, so the table is not searched again).
+     * @post - if featureSize - 1 of the cards on the table and the cards dealt to all but the last empty slot are
+     *       completed to a set by a card in the deck, the table will contain a set once the empty slots are filled.
+     */
+    public void guaranteeSet(List<Integer> tableCards) {
+        List<Integer> cards = new ArrayList<>(tableCards);
+        int emptySlots = Math.min(config.tableSize - cards.size(), size());
+        if (emptySlots == 0)
+            return;
+        int[] chosen = new int[config.featureSize - 1];
+        for (int next = 0; next < emptySlots; next++) {
+            int completing;
+            if (next == 0) { // any of the cards on the table
+                completing = findCompletion(cards, cards.size(), chosen, 0);
+            } else { // only with the latest card, the others were already searched
+                chosen[0] = cards.get(cards.size() - 1);
+                completing = findCompletion(cards, cards.size() - 1, chosen, 1);
+            }
+            if (completing != NONE) {
+                moveTo(completing, next);
+                return;
+            }
+            cards.add(get(next)); // no set yet, the next card is placed as dealt
+        }
+    }
+
+    /**
+     * Searches the cards for featureSize - 1 cards whose completing card is in the deck.
+     *
+     * @param cards  - the cards to choose from.
+     * @param end    - only the cards before this index are chosen.
+     * @param chosen - the cards chosen so far (featureSize - 1 cards long).
+     * @param count  - the number of cards chosen so far.
+     * @return - a card from the deck (and not one of the cards) that completes a set, or NONE if there is none.
+     */
+    private int findCompletion(List<Integer> cards, int end, int[] chosen, int count) {
+        if (count == chosen.length) {
+            int completing = completingCard(chosen);
+            return contains(completing) && !cards.contains(completing) ? completing : NONE;
+        }
+        for (int i = end - 1; i >= chosen.length - count - 1; i--) {
+            chosen[count] = cards.get(i);
+            int completing = findCompletion(cards, i, chosen, count + 1);
+            if (completing != NONE)
+                return completing;
+        }
+        return NONE;
+    }
+
+    /**
+     * Computes the only card that forms a legal set together with the given cards.
+     *
+     * @param cards - featureSize - 1 different cards.
+     * @return - the completing card, or NONE if no card completes the given cards to a set.
+     */
+    int completingCard(int[] cards) {
+        int[][] features = util.cardsToFeatures(cards);
+        int card = 0;
+        for (int i = 0; i < config.featureCount; i++) {
+            boolean[] seen = new boolean[config.featureSize];
+            int distinct = 0;
+            for (int[] cardFeatures : features) {
+                if (!seen[cardFeatures[i]]) {
+                    seen[cardFeatures[i]] = true;
+                    distinct++;
+                }
+            }
+            int value = features[0][i]; // all the same
+            if (distinct == cards.length) { // all different, the missing value
+                value = 0;
+                while (seen[value])
+                    value++;
+            } else if (distinct != 1) {
+                return NONE;
+            }
+            card = card * config.featureSize + value;
+        }
+        return card;
+    }
+}
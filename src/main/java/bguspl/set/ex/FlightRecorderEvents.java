@@ -0,0 +1,232 @@
+package bguspl.set.ex;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * The Java Flight Recorder events behind GameEvents.
+ * <p>
+ * This is the only class that uses jdk.jfr, and it is loaded only on a JVM that has the flight recorder.
+ */
+final class FlightRecorderEvents {
+
+    private static final String CATEGORY = "Set Game";
+
+    private FlightRecorderEvents() {
+    }
+
+    @Name("bguspl.set.Deal")
+    @Label("Deal")
+    @Description("A card was placed on the table")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    static class Deal extends Event {
+        @Label("Card")
+        int card;
+
+        @Label("Slot")
+        int slot;
+    }
+
+    @Name("bguspl.set.ClaimSubmitted")
+    @Label("Claim Submitted")
+    @Description("A player handed its selected cards to the dealer")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    static class ClaimSubmitted extends Event {
+        @Label("Player")
+        int player;
+
+        @Label("Slots")
+        @Description("The selected slots, one bit per slot")
+        long slots;
+    }
+
+    @Name("bguspl.set.ClaimVerified")
+    @Label("Claim Verified")
+    @Description("The dealer checked a claim, including removing the cards and dealing after a set")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    static class ClaimVerified extends Event implements GameEvents.Span {
+        @Label("Player")
+        int player;
+
+        @Label("Slots")
+        @Description("The claimed slots, one bit per slot")
+        long slots;
+
+        @Label("Verdict")
+        String verdict;
+    }
+
+    @Name("bguspl.set.Point")
+    @Label("Point")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    static class Point extends Event {
+        @Label("Player")
+        int player;
+
+        @Label("Score")
+        int score;
+    }
+
+    @Name("bguspl.set.Penalty")
+    @Label("Penalty")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    static class Penalty extends Event {
+        @Label("Player")
+        int player;
+    }
+
+    @Name("bguspl.set.Reshuffle")
+    @Label("Reshuffle")
+    @Description("The dealer returned the cards on the table to the deck")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    static class Reshuffle extends Event implements GameEvents.Span {
+        @Label("Cards")
+        @Description("The number of cards returned to the deck")
+        int cards;
+
+        @Label("Deck Size")
+        int deckSize;
+    }
+
+    @Name("bguspl.set.Freeze")
+    @Label("Freeze")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    static class Freeze extends Event {
+        @Label("Player")
+        int player;
+
+        @Label("Freeze Time")
+        @Timespan(Timespan.MILLISECONDS)
+        long millis;
+    }
+
+    private static final Deal DEAL = new Deal();
+    private static final ClaimSubmitted CLAIM_SUBMITTED = new ClaimSubmitted();
+    private static final Point POINT = new Point();
+    private static final Penalty PENALTY = new Penalty();
+    private static final Freeze FREEZE = new Freeze();
+    private static final ClaimVerified CLAIM_VERIFIED = new ClaimVerified();
+    private static final Reshuffle RESHUFFLE = new Reshuffle();
+
+    /**
+     * Records a card placed on the table.
+     */
+    static void deal(int card, int slot) {
+        if (DEAL.isEnabled()) {
+            Deal event = new Deal();
+            event.card = card;
+            event.slot = slot;
+            event.commit();
+        }
+    }
+
+    /**
+     * Records a claim handed to the dealer.
+     */
+    static void claimSubmitted(int player, long slots) {
+        if (CLAIM_SUBMITTED.isEnabled()) {
+            ClaimSubmitted event = new ClaimSubmitted();
+            event.player = player;
+            event.slots = slots;
+            event.commit();
+        }
+    }
+
+    /**
+     * Starts timing the check of a claim.
+     *
+     * @return - the event to pass to claimVerified(), or GameEvents.NONE if the event is not recorded.
+     */
+    static GameEvents.Span claimChecking() {
+        if (!CLAIM_VERIFIED.isEnabled())
+            return GameEvents.NONE;
+        ClaimVerified event = new ClaimVerified();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Records the check of a claim, started by claimChecking().
+     */
+    static void claimVerified(GameEvents.Span span, int player, long slots, String verdict) {
+        ClaimVerified event = (ClaimVerified) span;
+        if (event.shouldCommit()) {
+            event.player = player;
+            event.slots = slots;
+            event.verdict = verdict;
+            event.commit();
+        }
+    }
+
+    /**
+     * Records a point awarded to a player.
+     */
+    static void point(int player, int score) {
+        if (POINT.isEnabled()) {
+            Point event = new Point();
+            event.player = player;
+            event.score = score;
+            event.commit();
+        }
+    }
+
+    /**
+     * Records a penalty given to a player.
+     */
+    static void penalty(int player) {
+        if (PENALTY.isEnabled()) {
+            Penalty event = new Penalty();
+            event.player = player;
+            event.commit();
+        }
+    }
+
+    /**
+     * Starts timing a reshuffle.
+     *
+     * @return - the event to pass to reshuffled(), or GameEvents.NONE if the event is not recorded.
+     */
+    static GameEvents.Span reshuffling() {
+        if (!RESHUFFLE.isEnabled())
+            return GameEvents.NONE;
+        Reshuffle event = new Reshuffle();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Records a reshuffle, started by reshuffling().
+     */
+    static void reshuffled(GameEvents.Span span, int cards, int deckSize) {
+        Reshuffle event = (Reshuffle) span;
+        if (event.shouldCommit()) {
+            event.cards = cards;
+            event.deckSize = deckSize;
+            event.commit();
+        }
+    }
+
+    /**
+     * Records the freeze of a player.
+     */
+    static void freeze(int player, long millis) {
+        if (FREEZE.isEnabled()) {
+            Freeze event = new Freeze();
+            event.player = player;
+            event.millis = millis;
+            event.commit();
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package bguspl.set.ex;
+
+import bguspl.set.Env;
+import bguspl.set.GameThreads;
+
+import java.util.PriorityQueue;
+
+/**
+ * Counts down the freezes of all the players on one thread, so a frozen player's own thread never sleeps.
+ * <p>
+ * A freeze is a deadline kept by the player and checked on its input; this thread only updates the display whenever
+ * the remaining time crosses a whole second, and releases the player at its deadline to the millisecond.
+ */
+public class FreezeScheduler implements Runnable {
+
+    /**
+     * A frozen player and the time of its next display update.
+     */
+    private static class Freeze {
+        final Player player;
+        final long deadline;
+        long nextUpdate;
+
+        Freeze(Player player, long deadline, long now) {
+            this.player = player;
+            this.deadline = deadline;
+            this.nextUpdate = now;
+        }
+    }
+
+    /**
+     * The game environment object.
+     */
+    private final Env env;
+
+    /**
+     * The frozen players, the earliest display update first (guarded by this).
+     */
+    private final PriorityQueue<Freeze> frozen = new PriorityQueue<>((a, b) -> Long.compare(a.nextUpdate, b.nextUpdate));
+
+    private volatile boolean terminate;
+    GameThreads.Task task;
+
+    /**
+     * The class constructor.
+     *
+     * @param env - the environment object.
+     */
+    public FreezeScheduler(Env env) {
+        this.env = env;
+    }
+
+    /**
+     * Starts the freezes thread.
+     */
+    public void start() {
+        task = env.threads.start(env.clock.participant(this), "freezes");
+    }
+
+    /**
+     * Counts down a player's freeze (returns at once).
+     *
+     * @param player   - the frozen player.
+     * @param deadline - the env.clock time in milliseconds at which the freeze ends.
+     * @post - the freeze is displayed now, and player.unfreeze(deadline) is called at the deadline.
+     */
+    public void freeze(Player player, long deadline) {
+        synchronized (this) {
+            frozen.removeIf(freeze -> freeze.player == player);
+            frozen.add(new Freeze(player, deadline, env.clock.currentTimeMillis()));
+            env.clock.notifyAllOn(this);
+        }
+    }
+
+    @Override
+    public void run() {
+        env.logger.info("Thread " + Thread.currentThread().getName() + " starting.");
+        while (!terminate) {
+            Freeze due;
+            synchronized (this) {
+                long wait = frozen.isEmpty() ? 0 : frozen.peek().nextUpdate - env.clock.currentTimeMillis();
+                if (frozen.isEmpty() || wait > 0) {
+                    try {
+                        env.clock.waitOn(this, Math.max(wait, 0)); // woken early by a new freeze
+                    } catch (InterruptedException ignored) {
+                    }
+                    continue;
+                }
+                due = frozen.poll();
+            }
+            long remaining = due.deadline - env.clock.currentTimeMillis();
+            if (remaining > 0) {
+                env.ui.setFreeze(due.player.id, remaining);
+                due.nextUpdate = due.deadline - (remaining - 1) / Player.sec * Player.sec; // the next whole second
+                synchronized (this) {
+                    if (frozen.stream().noneMatch(freeze -> freeze.player == due.player)) // not frozen again meanwhile
+                        frozen.add(due);
+                }
+            } else {
+                env.ui.setFreeze(due.player.id, Dealer.ZERO);
+                due.player.unfreeze(due.deadline);
+            }
+        }
+        env.logger.info("Thread " + Thread.currentThread().getName() + " terminated.");
+    }
+
+    /**
+     * Asks the freezes thread to stop (returns at once).
+     */
+    public void stop() {
+        terminate = true;
+        synchronized (this) {
+            env.clock.notifyAllOn(this);
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package bguspl.set.ex;
+
+/**
+ * Java Flight Recorder events of the game's lifecycle.
+ * <p>
+ * The events are recorded only while a flight recording that enables them runs (e.g. started with
+ * -XX:StartFlightRecording); otherwise each helper costs a check of a flag, and the timed helpers return NONE rather
+ * than an event. Next to the JVM's own monitor and park events they show which game step the threads were doing when
+ * they blocked. Timed events span the step itself, on the thread that did it.
+ * <p>
+ * The flight recorder API (jdk.jfr) is missing from Java 8 builds before 8u262. This class does not use it: the events
+ * are in FlightRecorderEvents, which is loaded only if the API is found, so on such a JVM the game runs without events.
+ * Building still needs a JDK that has the API.
+ */
+public final class GameEvents {
+
+    /**
+     * A timed event that was started.
+     */
+    interface Span {
+    }
+
+    /**
+     * The span of a timed event that is not recorded.
+     */
+    static final Span NONE = new Span() {
+    };
+
+    /**
+     * True iff the JVM has the flight recorder API.
+     */
+    private static final boolean AVAILABLE = flightRecorderAvailable();
+
+    private GameEvents() {
+    }
+
+    private static boolean flightRecorderAvailable() {
+        try {
+            Class.forName("jdk.jfr.Event", false, GameEvents.class.getClassLoader());
+            return true;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+
+    /**
+     * Records a card placed on the table.
+     */
+    static void deal(int card, int slot) {
+        if (AVAILABLE)
+            FlightRecorderEvents.deal(card, slot);
+    }
+
+    /**
+     * Records a claim handed to the dealer.
+     */
+    static void claimSubmitted(int player, long slots) {
+        if (AVAILABLE)
+            FlightRecorderEvents.claimSubmitted(player, slots);
+    }
+
+    /**
+     * Starts timing the check of a claim.
+     *
+     * @return - the span to pass to claimVerified().
+     */
+    static Span claimChecking() {
+        return AVAILABLE ? FlightRecorderEvents.claimChecking() : NONE;
+    }
+
+    /**
+     * Records the check of a claim, started by claimChecking().
+     */
+    static void claimVerified(Span span, int player, long slots, String verdict) {
+        if (span != NONE)
+            FlightRecorderEvents.claimVerified(span, player, slots, verdict);
+    }
+
+    /**
+     * Records a point awarded to a player.
+     */
+    static void point(int player, int score) {
+        if (AVAILABLE)
+            FlightRecorderEvents.point(player, score);
+    }
+
+    /**
+     * Records a penalty given to a player.
+     */
+    static void penalty(int player) {
+        if (AVAILABLE)
+            FlightRecorderEvents.penalty(player);
+    }
+
+    /**
+     * Starts timing a reshuffle.
+     *
+     * @return - the span to pass to reshuffled().
+     */
+    static Span reshuffling() {
+        return AVAILABLE ? FlightRecorderEvents.reshuffling() : NONE;
+    }
+
+    /**
+     * Records a reshuffle, started by reshuffling().
+     */
+    static void reshuffled(Span span, int cards, int deckSize) {
+        if (span != NONE)
+            FlightRecorderEvents.reshuffled(span, cards, deckSize);
+    }
+
+    /**
+     * Records the freeze of a player.
+     */
+    static void freeze(int player, long millis) {
+        if (AVAILABLE)
+            FlightRecorderEvents.freeze(player, millis);
+    }
+}
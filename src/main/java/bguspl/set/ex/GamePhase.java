@@ -0,0 +1,12 @@
+package bguspl.set.ex;
+
+/**
+ * The phases of a game, as seen by the players.
+ */
+public enum GamePhase {
+    DEALING,     // the dealer is placing cards on the table
+    OPEN,        // the players may place tokens and claim sets
+    COLLECTING,  // the dealer is collecting the cards of a legal set
+    RESHUFFLING, // the dealer is returning all the cards to the deck
+    FINISHED     // the game is over
+}
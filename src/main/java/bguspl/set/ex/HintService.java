@@ -0,0 +1,121 @@
+package bguspl.set.ex;
+
+import bguspl.set.Env;
+import bguspl.set.GameThreads;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Finds and prints the sets on the table on its own thread, so the dealer only hands it a copy of the table.
+ * <p>
+ * Only the latest table is handled: tables the dealer dealt while the previous hints were being computed are skipped.
+ * The hints of recent tables are cached, and a table is not printed again if it is the one printed last.
+ */
+public class HintService implements Runnable {
+
+    /**
+     * The number of tables whose hints are cached.
+     */
+    private static final int CACHE_SIZE = 64;
+
+    /**
+     * The game environment object.
+     */
+    private final Env env;
+
+    private final Table table;
+
+    /**
+     * The hints of recent tables, by the card in each slot (used only by the hints thread).
+     */
+    private final Map<List<Integer>, List<String>> cache = new LinkedHashMap<List<Integer>, List<String>>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<List<Integer>, List<String>> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+
+    /**
+     * The latest table to print hints for, or null if it was handled (guarded by this).
+     */
+    private List<Integer> pending;
+
+    /**
+     * The table printed last (used only by the hints thread).
+     */
+    private List<Integer> printed;
+
+    private volatile boolean terminate;
+    GameThreads.Task task;
+
+    /**
+     * The class constructor.
+     *
+     * @param env   - the environment object.
+     * @param table - the table the hints are about.
+     */
+    public HintService(Env env, Table table) {
+        this.env = env;
+        this.table = table;
+    }
+
+    /**
+     * Starts the hints thread.
+     */
+    public void start() {
+        task = env.threads.start(env.clock.participant(this), "hints");
+    }
+
+    /**
+     * Asks for the hints of the current table to be printed (returns at once).
+     *
+     * @param slotToCard - a copy of the card in each slot.
+     * @post - the hints of this table or of a later one will be printed.
+     */
+    public void show(Integer[] slotToCard) {
+        synchronized (this) {
+            pending = Arrays.asList(slotToCard);
+            env.clock.notifyAllOn(this);
+        }
+    }
+
+    @Override
+    public void run() {
+        env.logger.info("Thread " + Thread.currentThread().getName() + " starting.");
+        while (!terminate) {
+            List<Integer> next;
+            synchronized (this) {
+                while (pending == null && !terminate) {
+                    try {
+                        env.clock.waitOn(this, 0);
+                    } catch (InterruptedException ignored) {
+                    }
+                }
+                next = pending;
+                pending = null;
+            }
+            if (next != null && !next.equals(printed)) {
+                List<String> hints = cache.computeIfAbsent(next, slots -> table.hints(slots.toArray(new Integer[0])));
+                StringBuilder out = new StringBuilder();
+                for (String hint : hints)
+                    out.append(hint).append(System.lineSeparator());
+                System.out.print(out.append("_______________________").append(System.lineSeparator()));
+                printed = next;
+            }
+        }
+        env.logger.info("Thread " + Thread.currentThread().getName() + " terminated.");
+    }
+
+    /**
+     * Asks the hints thread to stop (returns at once).
+     */
+    public void stop() {
+        terminate = true;
+        synchronized (this) {
+            env.clock.notifyAllOn(this);
+        }
+    }
+}
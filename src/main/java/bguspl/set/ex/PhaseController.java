@@ -0,0 +1,123 @@
+package bguspl.set.ex;
+
+import bguspl.set.Clock;
+
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Holds the current phase of a game. Only the dealer changes the phase, any thread may read it, wait for it or be
+ * told about its changes.
+ * <p>
+ * A phase change is a single atomic update, and the threads waiting for a phase check it under the same monitor the
+ * change is announced on, so a change is never missed and a waiting thread only wakes up when the phase changed.
+ * <p>
+ * Only the moves in the table of legal transitions are made: the game starts DEALING, is OPEN between the dealer's
+ * tasks, and every task (dealing, collecting a set or reshuffling) starts from OPEN or from the task before it.
+ * The game may finish from any phase, and once it is FINISHED it stays so.
+ */
+public class PhaseController {
+
+    /**
+     * Told about every phase change, on the thread that made the change.
+     */
+    public interface Listener {
+
+        /**
+         * @param from - the previous phase.
+         * @param to   - the new phase.
+         */
+        void phaseChanged(GamePhase from, GamePhase to);
+    }
+
+    /**
+     * The phases each phase may change to.
+     */
+    private static final Map<GamePhase, EnumSet<GamePhase>> LEGAL = new EnumMap<>(GamePhase.class);
+
+    static {
+        LEGAL.put(GamePhase.DEALING, EnumSet.of(GamePhase.OPEN, GamePhase.FINISHED));
+        LEGAL.put(GamePhase.OPEN, EnumSet.of(GamePhase.DEALING, GamePhase.COLLECTING, GamePhase.RESHUFFLING,
+                GamePhase.FINISHED));
+        LEGAL.put(GamePhase.COLLECTING, EnumSet.of(GamePhase.DEALING, GamePhase.OPEN, GamePhase.FINISHED));
+        LEGAL.put(GamePhase.RESHUFFLING, EnumSet.of(GamePhase.DEALING, GamePhase.FINISHED));
+        LEGAL.put(GamePhase.FINISHED, EnumSet.noneOf(GamePhase.class));
+    }
+
+    private final AtomicReference<GamePhase> phase;
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final Clock clock;
+
+    /**
+     * @param initial - the phase the game starts in.
+     * @param clock   - the clock the threads wait through.
+     */
+    public PhaseController(GamePhase initial, Clock clock) {
+        phase = new AtomicReference<>(initial);
+        this.clock = clock;
+    }
+
+    /**
+     * @param expected - a phase.
+     * @return - true iff the game is in that phase.
+     */
+    public boolean is(GamePhase expected) {
+        return phase.get() == expected;
+    }
+
+    /**
+     * Changes the phase, unless the game is already finished (e.g. terminated by another thread meanwhile).
+     *
+     * @param to - the new phase.
+     * @return - the previous phase.
+     * @throws IllegalStateException - if the game cannot move from its phase to the new one.
+     * @post - is(to), or is(FINISHED).
+     */
+    public GamePhase set(GamePhase to) {
+        GamePhase from;
+        do {
+            from = phase.get();
+            if (from == GamePhase.FINISHED || from == to)
+                return from;
+            if (!LEGAL.get(from).contains(to))
+                throw new IllegalStateException("illegal game phase change from " + from + " to " + to);
+        } while (!phase.compareAndSet(from, to));
+        changed(from, to);
+        return from;
+    }
+
+    private void changed(GamePhase from, GamePhase to) {
+        synchronized (this) {
+            clock.notifyAllOn(this);
+        }
+        for (Listener listener : listeners)
+            listener.phaseChanged(from, to);
+    }
+
+    /**
+     * Waits until the game is in one of the given phases.
+     *
+     * @param phases - the phases to wait for.
+     * @return - the phase the game is in.
+     * @throws InterruptedException - if the waiting thread was interrupted.
+     */
+    public GamePhase await(GamePhase... phases) throws InterruptedException {
+        synchronized (this) {
+            while (true) {
+                GamePhase current = phase.get();
+                for (GamePhase expected : phases)
+                    if (current == expected)
+                        return current;
+                clock.waitOn(this, 0);
+            }
+        }
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+}
@@ -1,11 +1,18 @@
 package bguspl.set.ex;
 
-import java.util.Arrays;
-import java.util.LinkedList;
 // import java.util.List;
 import java.util.Queue;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Phaser;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 import bguspl.set.Env;
+import bguspl.set.GameThreads;
+import bguspl.set.Journal;
 
 /**
  * This class manages the players' threads and data
@@ -33,7 +40,7 @@ public class Player implements Runnable {
     /**
      * The thread representing the current player.
      */
-    public Thread playerThread;
+    public volatile Thread playerThread;
 
     /**
      * The thread of the AI (computer) player (an additional thread used to generate
@@ -41,6 +48,17 @@ public class Player implements Runnable {
      */
     public Thread aiThread;
 
+    /**
+     * The handles used to join the player and AI threads (which may be pooled threads that do not end with the task).
+     */
+    GameThreads.Task playerTask;
+    GameThreads.Task aiTask;
+
+    /**
+     * The startup barrier the player and AI threads arrive at once they are ready (null if not started by the dealer).
+     */
+    private Phaser startup;
+
     /**
      * True iff the player is human (not a computer player).
      */
@@ -77,11 +95,70 @@ public class Player implements Runnable {
      *               manually, via the keyboard).
      */
     public Queue<Integer> pressedQueue;
+
+    /**
+     * The number of presses in pressedQueue, which is at most featureSize.
+     */
+    private final AtomicInteger queued = new AtomicInteger();
+
+    /**
+     * The number of queued presses that are done with: handled by the player thread, or dropped from the queue.
+     */
+    private final AtomicLong pressesDone = new AtomicLong();
+
     private Dealer dealer;
     public flagEnum flag;
-    public int countCards;
-    public Integer[] cards;
-    public Integer[] slots;
+
+    /**
+     * The slots the player placed its tokens on, one bit per slot (bit i is slot i).
+     */
+    private final AtomicLong selected = new AtomicLong();
+
+    /**
+     * The card that was in each selected slot when the player selected it.
+     */
+    private final int[] selectedCards;
+
+    /**
+     * The env.clock.nanoTime() at which the player placed the last token of its current claim.
+     */
+    public volatile long claimTime;
+
+    /**
+     * True from the moment the player hands a claim to the dealer until the dealer gives its verdict.
+     */
+    public volatile boolean claimPending;
+
+    /**
+     * The number of verdicts the player got from the dealer (points, penalties and discarded claims).
+     */
+    private volatile long verdicts;
+
+    /**
+     * The table version against which the player verified its current claim (Table.NO_VERSION if the claimed cards
+     * were already changed), and whether the claimed cards form a set at that version.
+     */
+    public volatile long claimVersion = Table.NO_VERSION;
+    public boolean claimIsSet;
+
+    /**
+     * The env.clock time in milliseconds until which the player is frozen and its key presses are ignored.
+     */
+    private volatile long freezeUntil;
+
+    /**
+     * Guards the flag, with a condition for each kind of wakeup so only the thread waiting for it is woken: verdicts
+     * wake the player thread, room in the queue wakes the AI thread. Key presses do not take the lock: pressedQueue is
+     * lock-free and a press unparks the player thread, so the input threads never wait for the game threads.
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition verdictGiven = lock.newCondition();
+    private final Condition queueRoom = lock.newCondition();
+
+    /**
+     * The AI's own random stream (split from the game's random source).
+     */
+    private final SplittableRandom random;
 
     public Player(Env env, Dealer dealer, Table table, int id, boolean human) {
         this.env = env;
@@ -89,13 +166,23 @@ public class Player implements Runnable {
         this.table = table;
         this.id = id;
         this.human = human;
-        this.countCards = Dealer.ZERO;
         this.flag = flagEnum.RESET;
-        this.pressedQueue = new LinkedList<>();
-        this.cards = new Integer[env.config.featureSize];
-        this.slots = new Integer[env.config.featureSize];
-        Arrays.fill(cards, null);
-        Arrays.fill(slots, null);
+        this.pressedQueue = new ConcurrentLinkedQueue<>();
+        this.selectedCards = new int[env.config.tableSize];
+        this.random = env.random.split();
+    }
+
+    /**
+     * Starts the player thread, which starts the AI thread of a computer player.
+     *
+     * @param startup - the barrier each of the player's threads arrives at once it is ready.
+     * @param name    - the name of the player thread.
+     * @post - startup has a party for each of the player's threads until it is ready.
+     */
+    public void start(Phaser startup, String name) {
+        this.startup = startup;
+        startup.register();
+        playerTask = env.threads.start(env.clock.participant(this), name);
     }
 
     /**
@@ -108,72 +195,122 @@ public class Player implements Runnable {
         env.logger.info("Thread " + Thread.currentThread().getName() + " starting.");
         if (!human)
             createArtificialIntelligence();
+        if (startup != null)
+            startup.arriveAndDeregister();
         while (!terminate) {
-            if (flag != flagEnum.RESET) {
-                if (flag == flagEnum.PENALTY) {
-                    timerHelper(env.config.penaltyFreezeMillis);
-                } else { // point
-                    timerHelper(env.config.pointFreezeMillis);
+            Integer slot = pressedQueue.poll(); // presses are only queued while the player is not frozen
+            if (slot == null) {
+                try {
+                    env.clock.park(0); // unparked by the next press
+                } catch (InterruptedException ignored) {
                 }
+                continue;
             }
-            synchronized (this) {
-                while (pressedQueue.isEmpty() && !dealer.availableForActions && flag == flagEnum.RESET) {
-                    try {
-                        this.wait();
-                    } catch (InterruptedException ignored) {
-                    }
-                }
-                if (!pressedQueue.isEmpty() && flag == flagEnum.RESET) {
-                    int slot = pressedQueue.remove();
-                    if (table.slotToCard[slot] != null) {
-                        boolean alreadyPicked = false; // indicates that the current card has been already selected by
-                                                       // the
-                        // player
-                        for (int i = Dealer.ZERO; i < slots.length; i++) {
-                            if (slots[i] != null && slot == slots[i]) {
-                                table.removeToken(id, slot);
-                                alreadyPicked = true;
-                                slots[i] = null;
-                                cards[i] = null;
-                                countCards--;
-                                break;
-                            }
-                        }
-                        if (!alreadyPicked) { // the card hadn't been selected yet by the player
-                            for (int i = Dealer.ZERO; i < slots.length; i++) {
-                                if (cards[i] == null && table.slotToCard[slot] != null) {
-                                    synchronized (dealer) {
-                                        table.placeToken(id, slot);
-                                    }
-                                    cards[i] = table.slotToCard[slot];
-                                    slots[i] = slot;
-                                    countCards++;
-                                    alreadyPicked = true;
-                                    break;
-                                }
-                            }
-                            if (countCards == cards.length && alreadyPicked) { // reached 3 cards
-                                dealer.addPotential(this);
-                                try {
-                                    wait();
-                                } catch (InterruptedException e) {
-
-                                }
-                            }
-
+            queued.decrementAndGet();
+            lock.lock();
+            try {
+                env.clock.signal(lock, queueRoom); // the AI may wait for room in the queue
+                boolean claimed = handlePress(slot);
+                pressesDone.incrementAndGet();
+                if (claimed) { // waiting for the dealer to check the set
+                    while (claimPending && !terminate) {
+                        try {
+                            env.clock.await(lock, verdictGiven, 0);
+                        } catch (InterruptedException ignored) {
                         }
                     }
                 }
+            } finally {
+                lock.unlock();
             }
         }
         if (!human)
             try {
-                aiThread.join();
+                aiTask.join();
             } catch (InterruptedException ignored) {
             }
         env.logger.info("Thread " + Thread.currentThread().getName() + " terminated.");
     }
 
+    /**
+     * Toggles the player's token on a slot, and hands the selected cards to the dealer once a full set is selected.
+     *
+     * @param slot - the slot that was pressed.
+     * @return - true iff a set was handed to the dealer for checking.
+     */
+    boolean handlePress(int slot) {
+        Integer card = table.slotToCard[slot];
+        if (card == null)
+            return false;
+        long bit = 1L << slot;
+        if ((selected.get() & bit) != 0) { // the card has been already selected by the player
+            table.removeToken(id, slot);
+            deselect(bit);
+            return false;
+        }
+        if (selectedCount() < env.config.featureSize) { // the card hadn't been selected yet by the player
+            synchronized (dealer) { // the dealer removes cards and their selections while holding it
+                if (!card.equals(table.slotToCard[slot])) // the card was removed since it was read
+                    return false;
+                table.placeToken(id, slot);
+                selectedCards[slot] = card;
+                selected.accumulateAndGet(bit, (slots, added) -> slots | added);
+            }
+            if (selectedCount() == env.config.featureSize) { // reached 3 cards
+                claimTime = env.clock.nanoTime(); // the dealer checks the claims in this order
+                verifyClaim();
+                claimPending = true;
+                GameEvents.claimSubmitted(id, selected.get());
+                dealer.addPotential(this);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return - the number of slots the player selected.
+     */
+    public int selectedCount() {
+        return Long.bitCount(selected.get());
+    }
+
+    /**
+     * @param slot - a slot on the table.
+     * @return - true iff the player selected the slot.
+     */
+    public boolean isSelected(int slot) {
+        return (selected.get() & (1L << slot)) != 0;
+    }
+
+    /**
+     * @return - the slots the player selected, one bit per slot (bit i is slot i).
+     */
+    public long selected() {
+        return selected.get();
+    }
+
+    /**
+     * @param slots - the selected slots to return the cards of.
+     * @return - the cards the player selected in the given slots, by the order of the slots.
+     */
+    public int[] selectedCards(long slots) {
+        int[] cards = new int[Long.bitCount(slots)];
+        for (int i = Dealer.ZERO; slots != 0; i++, slots &= slots - 1)
+            cards[i] = selectedCards[Long.numberOfTrailingZeros(slots)];
+        return cards;
+    }
+
+    /**
+     * Removes the player's selection of some slots (e.g. when their cards are removed from the table).
+     *
+     * @param slots - the slots to deselect, one bit per slot.
+     * @post - none of the given slots is selected.
+     */
+    public void deselect(long slots) {
+        selected.accumulateAndGet(slots, (current, removed) -> current & ~removed); // without waiting for the player
+    }
+
     /**
      * Creates an additional thread for an AI (computer) player. The main loop of
      * this thread repeatedly generates
@@ -182,36 +319,72 @@ public class Player implements Runnable {
      */
     private void createArtificialIntelligence() {
         // note: this is a very, very smart AI (!)
-        aiThread = new Thread(() -> {
+        if (startup != null)
+            startup.register(); // before the player thread arrives, so the game waits for the AI too
+        aiTask = env.threads.start(env.clock.participant(() -> {
+            aiThread = Thread.currentThread();
             env.logger.info("Thread " + Thread.currentThread().getName() + " starting.");
+            if (startup != null)
+                startup.arriveAndDeregister();
             while (!terminate) {
-                while (!dealer.availableForActions & pressedQueue.size() == env.config.featureSize) {
-                    synchronized (this) {
+                try {
+                    dealer.phase.await(GamePhase.OPEN, GamePhase.FINISHED);
+                } catch (InterruptedException ignored) {
+                }
+                lock.lock();
+                try {
+                    long frozen;
+                    while ((queued.get() >= env.config.featureSize
+                            | (frozen = freezeUntil - env.clock.currentTimeMillis()) > 0) & !terminate) {
                         try {
-                            wait();
+                            if (queued.get() >= env.config.featureSize)
+                                env.clock.await(lock, queueRoom, 0);
+                            else
+                                env.clock.await(lock, queueRoom, frozen); // presses are ignored until the freeze ends
                         } catch (InterruptedException e) {
                         }
                     }
+                } finally {
+                    lock.unlock();
                 }
-                int rnd = (int) (Math.random() * env.config.tableSize);
+                int rnd = random.nextInt(env.config.tableSize);
                 keyPressed(rnd);
             }
             env.logger.info("Thread " + Thread.currentThread().getName() + " terminated.");
-        }, "computer-" + id);
-        aiThread.start();
+        }), "computer-" + id);
     }
 
     /**
-     * Called when the game should be terminated.
+     * Asks the player and AI threads to stop (returns at once).
      */
-    public void terminate() {
+    public void stop() {
         terminate = true;
-        try {
-            if (!human) {
-                aiThread.join();
-            }
-            playerThread.join();
-        } catch (InterruptedException ignored) {
+        lock.lock();
+        try { // waking up the player and AI threads so they see the flag
+            env.clock.signal(lock, verdictGiven);
+            env.clock.signal(lock, queueRoom);
+        } finally {
+            lock.unlock();
+        }
+        wakePlayerThread();
+    }
+
+    /**
+     * Unparks the player thread if it waits for a press (if it did not start yet, it checks the queue first).
+     */
+    private void wakePlayerThread() {
+        Thread thread = playerThread;
+        if (thread != null)
+            env.clock.unpark(thread);
+    }
+
+    /**
+     * Drops the queued presses.
+     */
+    private void clearPresses() {
+        while (pressedQueue.poll() != null) {
+            queued.decrementAndGet();
+            pressesDone.incrementAndGet();
         }
     }
 
@@ -219,15 +392,23 @@ public class Player implements Runnable {
      * This method is called when a key is pressed.
      *
      * @param slot - the slot corresponding to the key pressed.
+     * It takes no lock, so it returns at once even while the player thread is busy (e.g. on the input thread).
+     *
+     * @return - true iff the press was queued for the player thread (false if it was dropped, e.g. while frozen).
      */
-    public void keyPressed(int slot) {
-        synchronized (this) {
-            if (pressedQueue.size() < env.config.featureSize & flag == flagEnum.RESET
-                    & table.slotToCard[slot] != null & dealer.availableForActions) {
-                pressedQueue.add(slot);
-                notifyAll();
-            }
-        }
+    public boolean keyPressed(int slot) {
+        if (isFrozen() | table.slotToCard[slot] == null | !dealer.phase.is(GamePhase.OPEN))
+            return false;
+        int count;
+        do {
+            count = queued.get();
+            if (count >= env.config.featureSize)
+                return false;
+        } while (!queued.compareAndSet(count, count + 1));
+        pressedQueue.add(slot);
+        if (!claimPending) // a player waiting for a verdict handles the press after it
+            wakePlayerThread();
+        return true;
     }
 
     /**
@@ -235,24 +416,57 @@ public class Player implements Runnable {
      *
      * @post - the player's score is increased by 1.
      * @post - the player's score is updated in the ui.
+     * @post - the key presses queued during the claim are dropped.
      */
     public void point() {
         int ignored = table.countCards(); // this part is just for demonstration in the unit tests
         env.ui.setScore(id, ++score);
-        synchronized (this) {
-            flag = flagEnum.POINT;
-            notifyAll();
-        }
+        GameEvents.point(id, score);
+        giveVerdict(flagEnum.POINT, env.config.pointFreezeMillis);
     }
 
    /**
      * Penalize a player and perform other related actions.
      * @post - player's flag has changed to PENALTY
+     * @post - the key presses queued during the claim are dropped.
      */
     public void penalty() {
-        synchronized (this) {
-            flag = flagEnum.PENALTY;
-            notifyAll();
+        GameEvents.penalty(id);
+        giveVerdict(flagEnum.PENALTY, env.config.penaltyFreezeMillis);
+    }
+
+    /**
+     * Releases the player from its claim without a point or a penalty (its cards changed before it was checked).
+     *
+     * @post - the key presses queued during the claim are dropped.
+     */
+    public void discard() {
+        giveVerdict(flagEnum.RESET, Dealer.ZERO);
+    }
+
+    /**
+     * Ends the player's pending claim and wakes only its player thread and AI thread.
+     *
+     * @param verdict      - the flag the player freezes by.
+     * @param freezeMillis - the length of the freeze (none if the verdict is RESET).
+     */
+    private void giveVerdict(flagEnum verdict, long freezeMillis) {
+        lock.lock();
+        try {
+            if (verdict != flagEnum.RESET) {
+                env.journal.record(Journal.Event.FREEZE, id, (int) freezeMillis);
+                GameEvents.freeze(id, freezeMillis);
+                freezeUntil = env.clock.currentTimeMillis() + freezeMillis;
+                dealer.freeze(this, freezeUntil);
+            }
+            flag = verdict;
+            claimPending = false;
+            verdicts++;
+            clearPresses();
+            env.clock.signal(lock, verdictGiven);
+            env.clock.signal(lock, queueRoom); // the AI may wait for room in the queue
+        } finally {
+            lock.unlock();
         }
     }
 
@@ -260,41 +474,86 @@ public class Player implements Runnable {
         return score;
     }
 
+    public long verdicts() {
+        return verdicts;
+    }
+
+    /**
+     * @return - the number of queued presses that were handled or dropped (keyPressed() returned true for each).
+     */
+    public long pressesDone() {
+        return pressesDone.get();
+    }
+
     public void join() {
         try {
-            playerThread.join();
+            playerTask.join();
         } catch (InterruptedException ignored) {
         }
     }
 
-    public void timerHelper(long freezetime) { // taking care of the player's sleeping seconds
+    /**
+     * @return - true iff the player is frozen and its key presses are ignored.
+     */
+    public boolean isFrozen() {
+        return env.clock.currentTimeMillis() < freezeUntil;
+    }
+
+    /**
+     * Called by the freeze scheduler when a freeze ends.
+     *
+     * @param deadline - the end of the freeze that ended.
+     * @post - the player's flag is RESET, unless the player was frozen again since.
+     */
+    void unfreeze(long deadline) {
+        lock.lock();
         try {
-            if(freezetime < 1000) {
-                env.ui.setFreeze(id, freezetime);
-                Thread.sleep(freezetime);
-            } else {
-            for (int i = Dealer.ZERO; i < freezetime / sec; i++) {
-                env.ui.setFreeze(id, freezetime - i * sec);
-                Thread.sleep(sec);
-            }
+            if (freezeUntil == deadline)
+                flag = flagEnum.RESET;
+        } finally {
+            lock.unlock();
         }
-            env.ui.setFreeze(id, Dealer.ZERO);
-        } catch (InterruptedException ignored) {
+    }
+
+    /**
+     * Checks the claimed cards on the player's own thread, so the dealer only needs to confirm that the table has
+     * not changed since.
+     *
+     * @post - claimVersion is the table version the claim was checked against, or Table.NO_VERSION.
+     */
+    private void verifyClaim() {
+        long version = table.version();
+        if (!onTable(selected.get())) {
+            claimVersion = Table.NO_VERSION;
+            return;
         }
-        flag = flagEnum.RESET;
+        claimIsSet = env.util.testSet(selectedCards(selected.get()));
+        claimVersion = version; // publishes claimIsSet
     }
 
-    public Thread checkThread() { // returning the current thread
-        return Thread.currentThread();
+    /**
+     * @param slots - selected slots, one bit per slot.
+     * @return - true iff each of the slots still holds the card that was in it when the player selected it.
+     */
+    boolean onTable(long slots) {
+        for (; slots != 0; slots &= slots - 1) {
+            int slot = Long.numberOfTrailingZeros(slots);
+            Integer card = table.slotToCard[slot];
+            if (card == null || card != selectedCards[slot])
+                return false;
+        }
+        return true;
     }
 
     public void clearCache() { // a method that resets the tested fields of the players
-        countCards = Dealer.ZERO;
-        for (int i = Dealer.ZERO; i < slots.length; i++) {
-            slots[i] = null;
-            cards[i] = null;
+        lock.lock();
+        try {
+            selected.set(Dealer.ZERO);
+            clearPresses();
+            env.clock.signal(lock, queueRoom); // the AI may wait for room in the queue
+        } finally {
+            lock.unlock();
         }
-        pressedQueue.clear();
     }
 /**
      * changing the player's flag to a new assigned flag.
@@ -0,0 +1,336 @@
+package bguspl.set.ex;
+
+import bguspl.set.Config;
+import bguspl.set.Env;
+import bguspl.set.Journal;
+import bguspl.set.UserInterfaceHeadless;
+import bguspl.set.UtilImpl;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.LinkedHashSet;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Logger;
+
+/**
+ * Replays a game recorded in a journal file.
+ * <p>
+ * The dealer is seeded with the recorded seed, and the recorded token presses of every player are fed to the players
+ * in the recorded order, so the dealer deals the same cards and reaches the same verdicts as in the recorded game.
+ * The dealer runs on its own thread but stops before every card it places or removes, and only continues when the
+ * replay reaches the matching recorded event, so the presses are interleaved with the dealer's work exactly as they
+ * were recorded. Nothing is delayed, so a replay also serves as a regression benchmark.
+ */
+public class Replay {
+
+    private final Journal.Recording recording;
+    private final Table table;
+    private final Dealer dealer;
+    private final Player[] players;
+    private final ExecutorService dealerThread;
+
+    /**
+     * True while the dealer thread may run (guarded by the dealer's monitor, which the paused dealer thread releases).
+     */
+    private boolean dealerTurn;
+
+    /**
+     * The card change the paused dealer is about to make, or null if the dealer is done with its current task.
+     */
+    private Journal.Event pendingEvent;
+    private int pendingCard;
+    private int pendingSlot;
+
+    /**
+     * The players whose claims were completed but not yet queued.
+     */
+    private final Set<Player> claims = new LinkedHashSet<>();
+
+    private int cards;
+    private int presses;
+    private int verdicts;
+    private int mismatches;
+    private String firstMismatch;
+    private long elapsedNanos;
+
+    /**
+     * The class constructor.
+     *
+     * @param logger    - the logger of the replayed game.
+     * @param recording - the recorded game.
+     * @throws IllegalArgumentException - if the recording does not contain the dealer's seed.
+     */
+    public Replay(Logger logger, Journal.Recording recording) {
+        this.recording = recording;
+
+        Properties properties = new Properties();
+        properties.setProperty("LogLevel", "OFF");
+        properties.setProperty("RandomSeed", Long.toString(seed(recording)));
+        properties.setProperty("FeatureSize", Integer.toString(recording.featureSize));
+        properties.setProperty("FeatureCount", Integer.toString(recording.featureCount));
+        properties.setProperty("HugeDeck", Boolean.toString(recording.hugeDeck));
+        properties.setProperty("Rows", Integer.toString(recording.rows));
+        properties.setProperty("Columns", Integer.toString(recording.columns));
+        properties.setProperty("HumanPlayers", Integer.toString(recording.players)); // no AI, the input is recorded
+        properties.setProperty("ComputerPlayers", "0");
+        properties.setProperty("Hints", "False");
+        properties.setProperty("TurnTimeoutSeconds", Double.toString(recording.turnTimeoutMillis / 1000.0));
+        properties.setProperty("TableDelaySeconds", "0");
+        properties.setProperty("PointFreezeSeconds", "0");
+        properties.setProperty("PenaltyFreezeSeconds", "0");
+        Config config = new Config(logger, properties);
+        Env env = new Env(logger, config, new UserInterfaceHeadless(), new UtilImpl(config));
+
+        table = new Table(env) {
+            @Override
+            protected void place(int card, int slot) {
+                awaitTurn(Journal.Event.CARD_PLACED, card, slot);
+                super.place(card, slot);
+            }
+
+            @Override
+            protected boolean remove(int slot) {
+                Integer card = slotToCard[slot];
+                if (card != null)
+                    awaitTurn(Journal.Event.CARD_REMOVED, card, slot);
+                return super.remove(slot);
+            }
+        };
+        players = new Player[config.players];
+        dealer = new Dealer(env, table, players) {
+            @Override
+            public void addPotential(Player p) {
+                claims.add(p); // queued when the replay reaches the recorded claim
+            }
+        };
+        for (int i = 0; i < players.length; i++)
+            players[i] = new Player(env, dealer, table, i, true);
+        dealerThread = Executors.newSingleThreadExecutor(task -> new Thread(task, "dealer"));
+    }
+
+    private static long seed(Journal.Recording recording) {
+        for (Journal.Record record : recording.records)
+            if (record.event == Journal.Event.SEED)
+                return (record.a & 0xffffffffL) | ((long) record.b << 32);
+        throw new IllegalArgumentException("the recording does not contain the dealer's seed");
+    }
+
+    /**
+     * Replays the whole recorded game.
+     *
+     * @return - true iff the replayed game dealt the same cards and reached the same verdicts as the recorded game.
+     */
+    public boolean run() {
+        long start = System.nanoTime();
+        try {
+            startDealer(() -> {
+                dealer.placeCardsOnTable(); // the deal before the players start
+                dealer.openTable();
+                dealer.placeCardsOnTable(); // the deal at the start of the first turn
+                dealer.openTable();
+            });
+            for (int i = 0; i < recording.records.size(); i++) {
+                Journal.Record record = recording.records.get(i);
+                switch (record.event) {
+                    case CARD_PLACED:
+                    case CARD_REMOVED:
+                        replayCard(i, record);
+                        break;
+                    case TOKEN_PLACED:
+                    case TOKEN_REMOVED:
+                        replayPress(i, record);
+                        break;
+                    case CLAIM:
+                        replayClaim(i, record);
+                        break;
+                    case VERDICT:
+                        replayVerdict(i, record);
+                        break;
+                    case RESHUFFLE:
+                        finishDealer(i);
+                        startDealer(() -> {
+                            dealer.removeAllCardsFromTable();
+                            dealer.placeCardsOnTable();
+                            dealer.openTable();
+                        });
+                        break;
+                    default: // the other events are consequences of the input, not input
+                        break;
+                }
+            }
+            finishDealer(recording.records.size());
+        } finally {
+            dealerThread.shutdownNow();
+        }
+        elapsedNanos = System.nanoTime() - start;
+        return mismatches == 0;
+    }
+
+    /**
+     * Called by the dealer thread before it changes a card on the table: hands the turn to the replay and waits
+     * until the replay reaches the recorded card change.
+     */
+    private void awaitTurn(Journal.Event event, int card, int slot) {
+        synchronized (dealer) {
+            pendingEvent = event;
+            pendingCard = card;
+            pendingSlot = slot;
+            dealerTurn = false;
+            dealer.notifyAll();
+            while (!dealerTurn) {
+                try {
+                    dealer.wait();
+                } catch (InterruptedException ignored) {
+                }
+            }
+            pendingEvent = null;
+        }
+    }
+
+    /**
+     * Runs a dealer task on the dealer thread until it is about to change a card or is done.
+     */
+    private void startDealer(Runnable task) {
+        synchronized (dealer) {
+            dealerTurn = true;
+        }
+        dealerThread.execute(() -> {
+            task.run();
+            synchronized (dealer) {
+                dealerTurn = false;
+                dealer.notifyAll();
+            }
+        });
+        awaitDealer();
+    }
+
+    /**
+     * Lets the paused dealer make its pending card change and run until the next one (or until its task is done).
+     */
+    private void stepDealer() {
+        synchronized (dealer) {
+            dealerTurn = true;
+            dealer.notifyAll();
+        }
+        awaitDealer();
+    }
+
+    private void awaitDealer() {
+        synchronized (dealer) {
+            while (dealerTurn) {
+                try {
+                    dealer.wait();
+                } catch (InterruptedException ignored) {
+                }
+            }
+        }
+    }
+
+    /**
+     * Lets the dealer finish its current task. Card changes that were not recorded are mismatches.
+     */
+    private void finishDealer(int event) {
+        while (pendingEvent != null) {
+            mismatch(event, "the replayed dealer made an unrecorded " + pendingEvent + " of card " + pendingCard
+                    + " in slot " + pendingSlot);
+            stepDealer();
+        }
+    }
+
+    private void replayCard(int event, Journal.Record record) {
+        cards++;
+        if (pendingEvent == null) {
+            mismatch(event, "recorded " + record.event + " of card " + record.a + " in slot " + record.b
+                    + ", the replayed dealer has nothing to change");
+            return;
+        }
+        if (pendingEvent != record.event || pendingCard != record.a || pendingSlot != record.b)
+            mismatch(event, "recorded " + record.event + " of card " + record.a + " in slot " + record.b + ", replayed "
+                    + pendingEvent + " of card " + pendingCard + " in slot " + pendingSlot);
+        stepDealer();
+    }
+
+    private void replayPress(int event, Journal.Record record) {
+        Player player = players[record.a];
+        int slot = record.b;
+        boolean selected = player.isSelected(slot);
+        if (table.slotToCard[slot] == null || selected != (record.event == Journal.Event.TOKEN_REMOVED))
+            mismatch(event, "player " + (player.id + 1) + " " + record.event + " on slot " + slot + " does not match the table");
+        presses++;
+        player.handlePress(slot);
+    }
+
+    private void replayClaim(int event, Journal.Record record) {
+        Player player = players[record.a];
+        if (!claims.remove(player)) {
+            mismatch(event, "recorded a claim of player " + (record.a + 1) + ", who did not complete one");
+            return;
+        }
+        player.claimTime = record.nanoTime; // the claims are checked in the recorded order
+        dealer.queueClaim(player);
+    }
+
+    private void replayVerdict(int event, Journal.Record record) {
+        finishDealer(event);
+        Player player;
+        synchronized (dealer.potentialSets) {
+            player = dealer.potentialSets.peek();
+        }
+        if (player == null) {
+            mismatch(event, "recorded a verdict for player " + (record.a + 1) + " with no pending set");
+            return;
+        }
+        if (player.id != record.a)
+            mismatch(event, "recorded a verdict for player " + (record.a + 1) + ", replayed player " + (player.id + 1));
+        verdicts++;
+        startDealer(dealer::checkNextClaim); // the verdict is given before any card is removed
+        int verdict = player.flag == Player.flagEnum.POINT ? Journal.VERDICT_POINT
+                : player.flag == Player.flagEnum.PENALTY ? Journal.VERDICT_PENALTY : Journal.VERDICT_DISCARDED;
+        if (verdict != record.b)
+            mismatch(event, "recorded verdict " + record.b + " for player " + (record.a + 1) + ", replayed " + verdict);
+        player.setFlag(Player.flagEnum.RESET); // the freeze is skipped
+    }
+
+    private void mismatch(int event, String description) {
+        if (mismatches++ == 0)
+            firstMismatch = "event " + event + ": " + description;
+    }
+
+    /**
+     * @return - a one line summary of the replay.
+     */
+    public String summary() {
+        int events = recording.records.size();
+        double millis = elapsedNanos / 1e6;
+        return String.format("replayed %d events (%d cards, %d presses, %d verdicts) in %.2f ms (%.0f events/sec), %d mismatches%s",
+                events, cards, presses, verdicts, millis, events / (millis / 1000.0), mismatches,
+                firstMismatch == null ? "" : ", first at " + firstMismatch);
+    }
+
+    /**
+     * Replays a recorded game.
+     *
+     * @param args - the journal file and optionally the number of times to replay it (for benchmarking).
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("usage: Replay <journal file> [runs]");
+            return;
+        }
+        Logger logger = Logger.getLogger("SetGameReplay");
+        logger.setUseParentHandlers(false);
+        Journal.Recording recording = Journal.read(Paths.get(args[0]));
+        int runs = args.length > 1 ? Integer.parseInt(args[1]) : 1;
+        boolean reproduced = true;
+        for (int i = 0; i < runs; i++) {
+            Replay replay = new Replay(logger, recording);
+            reproduced &= replay.run();
+            System.out.println(replay.summary());
+        }
+        if (!reproduced)
+            System.exit(1);
+    }
+}
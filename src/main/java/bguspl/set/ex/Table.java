@@ -1,16 +1,19 @@
 package bguspl.set.ex;
 
 import bguspl.set.Env;
+import bguspl.set.Journal;
 
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 /**
  * This class contains the data that is visible to the player.
  *
- * @inv slotToCard[x] == y iff cardToSlot[y] == x
+ * @inv slotToCard[x] == y iff slotOf(y) == x
  */
 public class Table {
 
@@ -27,7 +30,22 @@ public class Table {
     /**
      * Mapping between a card and the slot it is in (null if none).
      */
-    protected final Integer[] cardToSlot; // slot per card (if any)
+    protected final Integer[] cardToSlot; // slot per card (if any), null with a huge deck
+
+    /**
+     * Mapping between a card and the slot it is in, holding only the cards on the table (used with a huge deck).
+     */
+    private final Map<Integer, Integer> sparseCardToSlot;
+
+    /**
+     * Returned by version() for a table state that was never observed.
+     */
+    public static final long NO_VERSION = -1;
+
+    /**
+     * Incremented after every card change (cards are only changed by the dealer thread).
+     */
+    private volatile long version;
 
     /**
      * Constructor for testing.
@@ -36,13 +54,14 @@ public class Table {
      * @param slotToCard - mapping between a slot and the card placed in it (null if
      *                   none).
      * @param cardToSlot - mapping between a card and the slot it is in (null if
-     *                   none).
+     *                   none), or null to keep only the cards on the table.
      */
     public Table(Env env, Integer[] slotToCard, Integer[] cardToSlot) {
 
         this.env = env;
         this.slotToCard = slotToCard;
         this.cardToSlot = cardToSlot;
+        this.sparseCardToSlot = cardToSlot == null ? new ConcurrentHashMap<>(2 * slotToCard.length) : null;
     }
 
     /**
@@ -52,7 +71,7 @@ public class Table {
      */
     public Table(Env env) {
 
-        this(env, new Integer[env.config.tableSize], new Integer[env.config.deckSize]);
+        this(env, new Integer[env.config.tableSize], env.config.hugeDeck ? null : new Integer[env.config.deckSize]);
     }
 
     /**
@@ -60,15 +79,25 @@ public class Table {
      * table.
      */
     public void hints() {
+        hints(slotToCard).forEach(System.out::println);
+    }
+
+    /**
+     * Finds the legal sets among some cards on the table.
+     *
+     * @param slotToCard - the card in each slot (null if none), e.g. a copy of the table.
+     * @return - a hint line for each set, with its slots and its features.
+     */
+    public List<String> hints(Integer[] slotToCard) {
         List<Integer> deck = Arrays.stream(slotToCard).filter(Objects::nonNull).collect(Collectors.toList());
-        env.util.findSets(deck, Integer.MAX_VALUE).forEach(set -> {
+        List<Integer> slotsOrder = Arrays.asList(slotToCard);
+        return env.util.findSets(deck, Integer.MAX_VALUE).stream().map(set -> {
             StringBuilder sb = new StringBuilder().append("Hint: Set found: ");
-            List<Integer> slots = Arrays.stream(set).mapToObj(card -> cardToSlot[card]).sorted()
+            List<Integer> slots = Arrays.stream(set).mapToObj(slotsOrder::indexOf).sorted()
                     .collect(Collectors.toList());
             int[][] features = env.util.cardsToFeatures(set);
-            System.out.println(
-                    sb.append("slots: ").append(slots).append(" features: ").append(Arrays.deepToString(features)));
-        });
+            return sb.append("slots: ").append(slots).append(" features: ").append(Arrays.deepToString(features)).toString();
+        }).collect(Collectors.toList());
     }
 
     /**
@@ -93,32 +122,106 @@ public class Table {
      * @post - the card placed is on the table, in the assigned slot.
      */
     public void placeCard(int card, int slot) {
-        try {
-            Thread.sleep(env.config.tableDelayMillis);
-        } catch (InterruptedException ignored) {
-        }
-
-        cardToSlot[card] = slot;
-        slotToCard[slot] = card;
+        place(card, slot);
         env.ui.placeCard(card, slot);
     }
 
+    /**
+     * Places several cards on the table at once, updating the display once.
+     *
+     * @param cards - the card ids to place.
+     * @param slots - the slot in which each card should be placed.
+     *
+     * @post - the cards are on the table, each in its assigned slot.
+     */
+    public void placeCards(int[] cards, int[] slots) {
+        for (int i = 0; i < cards.length; i++)
+            place(cards[i], slots[i]);
+        if (cards.length > 0)
+            env.ui.placeCards(cards, slots);
+    }
+
     /**
      * Removes a card from a grid slot on the table.
      * 
      * @param slot - the slot from which to remove the card.
      */
     public void removeCard(int slot) {
-        try {
-            Thread.sleep(env.config.tableDelayMillis);
-        } catch (InterruptedException ignored) {
-        }
-        Integer card = slotToCard[slot];
-        if (card != null) {
-            slotToCard[slot] = null;
-            cardToSlot[card] = null;
+        if (remove(slot))
             env.ui.removeCard(slot);
-        }
+    }
+
+    /**
+     * Removes the cards from several slots at once, updating the display once.
+     *
+     * @param slots - the slots from which to remove the cards (empty slots are skipped).
+     */
+    public void removeCards(int[] slots) {
+        int removed = 0;
+        int[] removedSlots = new int[slots.length];
+        for (int slot : slots)
+            if (remove(slot))
+                removedSlots[removed++] = slot;
+        if (removed > 0)
+            env.ui.removeCards(Arrays.copyOf(removedSlots, removed));
+    }
+
+    /**
+     * Puts a card in a slot, without updating the display.
+     *
+     * @param card - the card id to place in the slot.
+     * @param slot - the slot in which the card should be placed.
+     */
+    protected void place(int card, int slot) {
+        setSlot(card, slot);
+        slotToCard[slot] = card;
+        version++;
+        env.journal.record(Journal.Event.CARD_PLACED, card, slot);
+        GameEvents.deal(card, slot);
+    }
+
+    /**
+     * Takes the card out of a slot, without updating the display.
+     *
+     * @param slot - the slot from which to remove the card.
+     * @return - true iff there was a card in the slot.
+     */
+    protected boolean remove(int slot) {
+        Integer card = slotToCard[slot];
+        if (card == null)
+            return false;
+        slotToCard[slot] = null;
+        setSlot(card, null);
+        version++;
+        env.journal.record(Journal.Event.CARD_REMOVED, card, slot);
+        return true;
+    }
+
+    /**
+     * @param card - a card.
+     * @return - the slot the card is in, or null if it is not on the table.
+     */
+    private Integer slotOf(int card) {
+        return cardToSlot != null ? cardToSlot[card] : sparseCardToSlot.get(card);
+    }
+
+    private void setSlot(int card, Integer slot) {
+        if (cardToSlot != null)
+            cardToSlot[card] = slot;
+        else if (slot != null)
+            sparseCardToSlot.put(card, slot);
+        else
+            sparseCardToSlot.remove(card);
+    }
+
+    /**
+     * The version of the cards on the table: as long as it does not change, no card was placed or removed.
+     * A state read after reading the version is at least as new as that version.
+     *
+     * @return - the current version.
+     */
+    public long version() {
+        return version;
     }
 
     /**
@@ -128,7 +231,8 @@ public class Table {
      * @param slot   - the slot on which to place the token.
      */
     public void placeToken(int player, int slot) {
-        if(slotToCard[slot] != null && cardToSlot[slotToCard[slot]] != null) {
+        if(slotToCard[slot] != null && slotOf(slotToCard[slot]) != null) {
+        env.journal.record(Journal.Event.TOKEN_PLACED, player, slot);
         env.ui.placeToken(player, slot);
     }
     }
@@ -141,7 +245,8 @@ public class Table {
      * @return - true iff a token was successfully removed.
      */
     public boolean removeToken(int player, int slot) {
-        if(slotToCard[slot] != null && cardToSlot[slotToCard[slot]] != null) {
+        if(slotToCard[slot] != null && slotOf(slotToCard[slot]) != null) {
+        env.journal.record(Journal.Event.TOKEN_REMOVED, player, slot);
         env.ui.removeToken(player, slot);
         }
         return false;
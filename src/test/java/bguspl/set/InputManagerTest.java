@@ -0,0 +1,80 @@
+package bguspl.set;
+
+import bguspl.set.ex.Dealer;
+import bguspl.set.ex.GamePhase;
+import bguspl.set.ex.Player;
+import bguspl.set.ex.Table;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Properties;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class InputManagerTest {
+
+    Config config;
+    Player[] players;
+    MockLogger logger;
+
+    @BeforeEach
+    void setUp() {
+
+        Properties properties = new Properties();
+        properties.put("Rows", "2");
+        properties.put("Columns", "2");
+        properties.put("HumanPlayers", "2");
+        properties.put("ComputerPlayers", "0");
+        properties.put("PlayerKeys1", "81,87,69,82");
+        properties.put("PlayerKeys2", "85,73,79,80");
+        logger = new MockLogger();
+        config = new Config(logger, properties);
+        Integer[] slotToCard = new Integer[config.tableSize];
+        Integer[] cardToSlot = new Integer[config.deckSize];
+        for (int slot = 0; slot < config.tableSize; slot++) {
+            slotToCard[slot] = slot;
+            cardToSlot[slot] = slot;
+        }
+
+        Env env = new Env(logger, config, new UserInterfaceHeadless(), new UtilImpl(config));
+        Table table = new Table(env, slotToCard, cardToSlot);
+        players = new Player[config.players];
+        Dealer dealer = new Dealer(env, table, players);
+        for (int i = 0; i < players.length; i++)
+            players[i] = new Player(env, dealer, table, i, true);
+        dealer.phase.set(GamePhase.OPEN); // the players accept presses, their threads are not started
+    }
+
+    @Test
+    void keysAreDispatchedToTheirPlayerAndSlot() {
+        InputManager input = new InputManager(logger, config, players);
+
+        assertTrue(input.dispatch(87)); // W, the second key of the first player
+        assertTrue(input.dispatch(80)); // P, the fourth key of the second player
+        assertFalse(input.dispatch(65)); // A, no player's key
+
+        assertEquals(Collections.singletonList(1), new ArrayList<>(players[0].pressedQueue));
+        assertEquals(Collections.singletonList(3), new ArrayList<>(players[1].pressedQueue));
+    }
+
+    @Test
+    void pressesOnCardsNotShownYetAreIgnored() {
+        InputManager input = new InputManager(logger, config, players, slot -> slot != 2);
+
+        assertFalse(input.dispatch(69)); // E, slot 2 of the first player
+        assertTrue(input.dispatch(82)); // R, slot 3 of the first player
+
+        assertEquals(Collections.singletonList(3), new ArrayList<>(players[0].pressedQueue));
+    }
+
+    static class MockLogger extends Logger {
+        protected MockLogger() {
+            super("", null);
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package bguspl.set;
+
+import bguspl.set.ex.Dealer;
+import bguspl.set.ex.GamePhase;
+import bguspl.set.ex.Player;
+import bguspl.set.ex.Table;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RemotePlayerServerTest {
+
+    RemotePlayerServer server;
+    Player[] players;
+    Socket socket;
+    BufferedReader in;
+    OutputStream out;
+
+    @BeforeEach
+    void setUp() throws IOException {
+
+        Properties properties = new Properties();
+        properties.put("Rows", "2");
+        properties.put("Columns", "2");
+        properties.put("HumanPlayers", "2");
+        properties.put("ComputerPlayers", "0");
+        properties.put("ServerPort", "0");
+        properties.put("PlayerKeys1", "81,87,69,82");
+        properties.put("PlayerKeys2", "85,73,79,80");
+        MockLogger logger = new MockLogger();
+        Config config = new Config(logger, properties);
+        Integer[] slotToCard = new Integer[config.tableSize];
+        Integer[] cardToSlot = new Integer[config.deckSize];
+        for (int slot = 0; slot < config.tableSize; slot++) {
+            slotToCard[slot] = slot;
+            cardToSlot[slot] = slot;
+        }
+
+        Env env = new Env(logger, config, new UserInterfaceHeadless(), new UtilImpl(config));
+        Table table = new Table(env, slotToCard, cardToSlot);
+        players = new Player[config.players];
+        Dealer dealer = new Dealer(env, table, players);
+        for (int i = 0; i < players.length; i++)
+            players[i] = new Player(env, dealer, table, i, true);
+        dealer.phase.set(GamePhase.OPEN); // the players accept presses, their threads are not started
+
+        server = new RemotePlayerServer(logger, config, players);
+        socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort());
+        socket.setSoTimeout(5000);
+        in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+        out = socket.getOutputStream();
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        socket.close();
+        server.dispose();
+    }
+
+    private void send(String lines) throws IOException {
+        out.write(lines.getBytes(StandardCharsets.US_ASCII));
+        out.flush();
+    }
+
+    /**
+     * @return - the next line from the server that starts with the prefix (skipping the table updates).
+     */
+    private String receive(String prefix) throws IOException {
+        String line;
+        while ((line = in.readLine()) != null) {
+            if (line.startsWith(prefix))
+                return line;
+        }
+        throw new IOException("connection closed");
+    }
+
+    private void awaitQueued(Player player, int count) throws InterruptedException {
+        for (int i = 0; i < 500 && player.pressedQueue.size() < count; i++)
+            Thread.sleep(10);
+    }
+
+    @Test
+    void listensOnlyOnLoopbackByDefault() throws IOException {
+        assertTrue(server.getAddress().isLoopbackAddress());
+    }
+
+    @Test
+    void keyPressesReachThePlayerQueue() throws IOException, InterruptedException {
+        send("J 1\n");
+        assertEquals("OK 1", receive("OK"));
+
+        send("K 3\nK 0\n");
+        awaitQueued(players[1], 2);
+
+        assertEquals(Arrays.asList(3, 0), Arrays.asList(players[1].pressedQueue.toArray()));
+        assertTrue(players[0].pressedQueue.isEmpty());
+    }
+
+    @Test
+    void keyPressesBeforeJoiningAreRejected() throws IOException {
+        send("K 3\n");
+        assertEquals("ERR join first", receive("ERR"));
+
+        send("J 5\n");
+        assertEquals("ERR no human player 5", receive("ERR"));
+
+        send("J 0\nK 9\n");
+        assertEquals("OK 0", receive("OK"));
+        assertEquals("ERR no slot 9", receive("ERR"));
+        assertTrue(players[0].pressedQueue.isEmpty());
+    }
+
+    static class MockLogger extends Logger {
+        protected MockLogger() {
+            super("", null);
+        }
+    }
+}
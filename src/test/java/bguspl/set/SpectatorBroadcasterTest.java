@@ -0,0 +1,168 @@
+package bguspl.set;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class SpectatorBroadcasterTest {
+
+    SpectatorBroadcaster broadcaster;
+    final List<Socket> sockets = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() throws IOException {
+
+        Properties properties = new Properties();
+        properties.put("Rows", "2");
+        properties.put("Columns", "2");
+        properties.put("HumanPlayers", "2");
+        properties.put("ComputerPlayers", "0");
+        properties.put("SpectatorPort", "0");
+        properties.put("PlayerKeys1", "81,87,69,82");
+        properties.put("PlayerKeys2", "85,73,79,80");
+        MockLogger logger = new MockLogger();
+        Config config = new Config(logger, properties);
+        broadcaster = new SpectatorBroadcaster(logger, config);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        for (Socket socket : sockets)
+            socket.close();
+        broadcaster.dispose();
+    }
+
+    /**
+     * Connects a spectator and reads the RESET frame that starts its stream.
+     */
+    private DataInputStream connect() throws IOException {
+        Socket socket = new Socket(InetAddress.getLoopbackAddress(), broadcaster.getPort());
+        socket.setSoTimeout(5000);
+        sockets.add(socket);
+        DataInputStream in = new DataInputStream(socket.getInputStream());
+        assertEquals(12, in.readUnsignedByte()); // RESET
+        return in;
+    }
+
+    private static long readVarLong(DataInputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; ; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7f) << shift;
+            if ((b & 0x80) == 0)
+                return value;
+        }
+    }
+
+    private static long readSigned(DataInputStream in) throws IOException {
+        long zigzag = readVarLong(in);
+        return (zigzag >>> 1) ^ -(zigzag & 1);
+    }
+
+    /**
+     * Decodes the next frame as its opcode and arguments.
+     */
+    private static List<Long> readFrame(DataInputStream in) throws IOException {
+        int opcode = in.readUnsignedByte();
+        List<Long> frame = new ArrayList<>();
+        frame.add((long) opcode);
+        switch (opcode) {
+            case 1: // CARD_PLACED slot card
+            case 3: // TOKEN_PLACED player slot
+            case 4: // TOKEN_REMOVED player slot
+                frame.add(readVarLong(in));
+                frame.add(readVarLong(in));
+                break;
+            case 2: // CARD_REMOVED slot
+            case 5: // SLOT_TOKENS_REMOVED slot
+                frame.add(readVarLong(in));
+                break;
+            case 7: // SCORE player delta
+            case 8: // FREEZE player delta
+                frame.add(readVarLong(in));
+                frame.add(readSigned(in));
+                break;
+            case 9: // COUNTDOWN delta warn
+                frame.add(readSigned(in));
+                frame.add(readVarLong(in));
+                break;
+            case 10: // ELAPSED delta
+                frame.add(readSigned(in));
+                break;
+            case 11: // WINNER count player...
+                long count = readVarLong(in);
+                frame.add(count);
+                for (int i = 0; i < count; i++)
+                    frame.add(readVarLong(in));
+                break;
+            default: // ALL_TOKENS_REMOVED, RESET
+                break;
+        }
+        return frame;
+    }
+
+    private static List<Long> frame(long... values) {
+        List<Long> frame = new ArrayList<>();
+        for (long value : values)
+            frame.add(value);
+        return frame;
+    }
+
+    @Test
+    void updatesAreSentAsDeltaFrames() throws IOException {
+        DataInputStream in = connect();
+
+        broadcaster.placeCard(300, 2); // a card id that takes two varint bytes
+        broadcaster.placeToken(1, 2);
+        broadcaster.setScore(0, 3);
+        broadcaster.setScore(0, 1);
+        broadcaster.setCountdown(30000, false);
+        broadcaster.setCountdown(4000, true);
+        broadcaster.removeToken(1, 2);
+        broadcaster.removeCard(2);
+        broadcaster.announceWinner(new int[]{0, 1});
+
+        assertEquals(frame(1, 2, 300), readFrame(in));
+        assertEquals(frame(3, 1, 2), readFrame(in));
+        assertEquals(frame(7, 0, 3), readFrame(in));
+        assertEquals(frame(7, 0, -2), readFrame(in));
+        assertEquals(frame(9, 30000, 0), readFrame(in));
+        assertEquals(frame(9, -26000, 1), readFrame(in));
+        assertEquals(frame(4, 1, 2), readFrame(in));
+        assertEquals(frame(2, 2), readFrame(in));
+        assertEquals(frame(11, 2, 0, 1), readFrame(in));
+    }
+
+    @Test
+    void newSpectatorGetsSnapshot() throws IOException {
+        broadcaster.placeCard(7, 0);
+        broadcaster.placeCard(8, 3);
+        broadcaster.placeToken(0, 3);
+        broadcaster.setScore(1, 2);
+        broadcaster.setFreeze(1, 1000);
+
+        DataInputStream in = connect();
+
+        assertEquals(Arrays.asList(frame(1, 0, 7), frame(1, 3, 8), frame(3, 0, 3), frame(7, 1, 2),
+                frame(8, 1, 1000)), Arrays.asList(readFrame(in), readFrame(in), readFrame(in), readFrame(in),
+                readFrame(in)));
+    }
+
+    static class MockLogger extends Logger {
+        protected MockLogger() {
+            super("", null);
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package bguspl.set.ex;
+
+import bguspl.set.Config;
+import bguspl.set.Util;
+import bguspl.set.UtilImpl;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.SplittableRandom;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DeckTest {
+
+    Config config;
+    Util util;
+
+    private void setUp(boolean hugeDeck) {
+
+        Properties properties = new Properties();
+        properties.put("Rows", "2");
+        properties.put("Columns", "2");
+        properties.put("FeatureSize", "3");
+        properties.put("FeatureCount", "4");
+        properties.put("HugeDeck", Boolean.toString(hugeDeck));
+        properties.put("PlayerKeys1", "81,87,69,82");
+        properties.put("PlayerKeys2", "85,73,79,80");
+        MockLogger logger = new MockLogger();
+        config = new Config(logger, properties);
+        util = new UtilImpl(config);
+    }
+
+    @Test
+    void completingCardOfTwoCards() {
+        setUp(false);
+        Deck deck = new Deck(config, util, new SplittableRandom(1));
+
+        assertEquals(2, deck.completingCard(new int[]{0, 1})); // 0000 and 0001 are completed by 0002
+        assertEquals(8, deck.completingCard(new int[]{0, 4})); // 0000 and 0011 are completed by 0022
+        for (int a = 0; a < config.deckSize; a++) {
+            for (int b = a + 1; b < config.deckSize; b++) {
+                int c = deck.completingCard(new int[]{a, b});
+                assertNotEquals(a, c);
+                assertNotEquals(b, c);
+                assertTrue(util.testSet(new int[]{a, b, c}));
+            }
+        }
+    }
+
+    @Test
+    void guaranteedSetAfterDealing() {
+        for (boolean hugeDeck : new boolean[]{false, true}) {
+            setUp(hugeDeck);
+            int withoutGuarantee = 0;
+            for (long seed = 0; seed < 200; seed++) {
+                Deck deck = new Deck(config, util, new SplittableRandom(seed));
+                deck.shuffle();
+                List<Integer> table = new ArrayList<>();
+                table.add(deck.deal());
+                table.add(deck.deal()); // two cards on the table, two empty slots
+
+                if (!hasSetAfterDealing(new Deck(deck, new SplittableRandom(seed)), table))
+                    withoutGuarantee++;
+                deck.guaranteeSet(table);
+
+                assertTrue(hasSetAfterDealing(deck, table), "seed " + seed + ", huge deck " + hugeDeck);
+            }
+            assertTrue(withoutGuarantee > 0); // the plain deal does not always have a set
+        }
+    }
+
+    /**
+     * @return - true iff the cards on the table together with the cards dealt to the empty slots contain a set.
+     */
+    private boolean hasSetAfterDealing(Deck deck, List<Integer> table) {
+        List<Integer> cards = new ArrayList<>(table);
+        while (cards.size() < config.tableSize)
+            cards.add(deck.deal());
+        return !util.findSets(cards, 1).isEmpty();
+    }
+
+    @Test
+    void guaranteeSetKeepsTheDeck() {
+        setUp(false);
+        Deck deck = new Deck(config, util, new SplittableRandom(7));
+        deck.shuffle();
+        List<Integer> table = new ArrayList<>();
+        table.add(deck.deal());
+        int size = deck.size();
+
+        deck.guaranteeSet(table);
+
+        assertEquals(size, deck.size());
+        for (int card = 0; card < config.deckSize; card++)
+            assertEquals(!table.contains(card), deck.contains(card));
+        assertFalse(deck.isEmpty());
+    }
+
+    static class MockLogger extends Logger {
+        protected MockLogger() {
+            super("", null);
+        }
+    }
+}
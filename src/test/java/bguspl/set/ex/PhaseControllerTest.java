@@ -0,0 +1,57 @@
+package bguspl.set.ex;
+
+import bguspl.set.Clock;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PhaseControllerTest {
+
+    @Test
+    void legalChangesAreAnnounced() {
+        PhaseController phase = new PhaseController(GamePhase.DEALING, Clock.REAL);
+        List<String> changes = new ArrayList<>();
+        phase.addListener((from, to) -> changes.add(from + ">" + to));
+
+        phase.set(GamePhase.OPEN);
+        phase.set(GamePhase.COLLECTING);
+        phase.set(GamePhase.DEALING);
+        phase.set(GamePhase.OPEN);
+        phase.set(GamePhase.OPEN); // no change
+        phase.set(GamePhase.RESHUFFLING);
+        phase.set(GamePhase.DEALING);
+
+        assertEquals(Arrays.asList("DEALING>OPEN", "OPEN>COLLECTING", "COLLECTING>DEALING", "DEALING>OPEN",
+                "OPEN>RESHUFFLING", "RESHUFFLING>DEALING"), changes);
+    }
+
+    @Test
+    void illegalChangesAreRejected() {
+        PhaseController phase = new PhaseController(GamePhase.DEALING, Clock.REAL);
+
+        assertThrows(IllegalStateException.class, () -> phase.set(GamePhase.COLLECTING));
+        assertThrows(IllegalStateException.class, () -> phase.set(GamePhase.RESHUFFLING));
+        assertTrue(phase.is(GamePhase.DEALING));
+
+        phase.set(GamePhase.OPEN);
+        phase.set(GamePhase.RESHUFFLING);
+        assertThrows(IllegalStateException.class, () -> phase.set(GamePhase.OPEN));
+        assertTrue(phase.is(GamePhase.RESHUFFLING));
+    }
+
+    @Test
+    void finishedIsFinal() {
+        PhaseController phase = new PhaseController(GamePhase.OPEN, Clock.REAL);
+
+        phase.set(GamePhase.FINISHED);
+        phase.set(GamePhase.DEALING); // e.g. the dealer's task ending after the game was terminated
+
+        assertTrue(phase.is(GamePhase.FINISHED));
+    }
+}
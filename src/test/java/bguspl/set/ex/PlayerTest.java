@@ -11,9 +11,13 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import java.util.Properties;
 import java.util.logging.Logger;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.verify;
@@ -95,4 +99,74 @@ class PlayerTest {
 
         assertEquals(expectedFlag, player.flag);
     }
+
+    @Test
+    void selectAcrossTheWholeMask() {
+        Properties properties = new Properties();
+        properties.put("Rows", "8");
+        properties.put("Columns", "8"); // 64 slots, the last one is the sign bit of the mask
+        Config config = new Config(logger, properties);
+        Integer[] slotToCard = new Integer[config.tableSize];
+        Integer[] cardToSlot = new Integer[config.deckSize];
+        for (int slot = 0; slot < config.tableSize; slot++) {
+            slotToCard[slot] = slot;
+            cardToSlot[slot] = slot;
+        }
+        Env env = new Env(logger, config, ui, util);
+        Table bigTable = new Table(env, slotToCard, cardToSlot);
+        Player bigPlayer = new Player(env, dealer, bigTable, 0, true);
+
+        assertFalse(bigPlayer.handlePress(0));
+        assertFalse(bigPlayer.handlePress(63));
+        assertEquals(1L | 1L << 63, bigPlayer.selected());
+        assertTrue(bigPlayer.isSelected(63));
+        assertEquals(2, bigPlayer.selectedCount());
+        assertArrayEquals(new int[]{0, 63}, bigPlayer.selectedCards(bigPlayer.selected()));
+
+        assertFalse(bigPlayer.handlePress(63)); // pressing again removes the token
+        assertEquals(1L, bigPlayer.selected());
+
+        assertFalse(bigPlayer.handlePress(63));
+        assertTrue(bigPlayer.handlePress(62)); // the third card makes a claim
+        verify(dealer).addPotential(bigPlayer);
+        assertTrue(bigPlayer.onTable(bigPlayer.selected()));
+
+        slotToCard[62] = 5; // the card was replaced since it was selected
+        assertFalse(bigPlayer.onTable(bigPlayer.selected()));
+
+        bigPlayer.deselect(1L << 63 | 1L << 62);
+        assertEquals(1L, bigPlayer.selected());
+        assertFalse(bigPlayer.isSelected(63));
+    }
+
+    @Test
+    void cardRemovedWhilePressingIsNotSelected() throws InterruptedException {
+        Config config = new Config(logger, new Properties());
+        Integer[] slotToCard = new Integer[config.tableSize];
+        Integer[] cardToSlot = new Integer[config.deckSize];
+        slotToCard[3] = 7;
+        cardToSlot[7] = 3;
+        Table smallTable = new Table(new Env(logger, config, ui, util), slotToCard, cardToSlot);
+        Player smallPlayer = new Player(new Env(logger, config, ui, util), dealer, smallTable, 0, true);
+
+        Thread pressing = new Thread(() -> smallPlayer.handlePress(3));
+        synchronized (dealer) { // the dealer is removing cards
+            pressing.start();
+            while (pressing.getState() != Thread.State.BLOCKED) // it read the card and waits for the dealer
+                Thread.sleep(1);
+            slotToCard[3] = null;
+            cardToSlot[7] = null;
+        }
+        pressing.join();
+
+        assertEquals(0L, smallPlayer.selected());
+    }
+
+    @Test
+    void tooManySlotsAreRejected() {
+        Properties properties = new Properties();
+        properties.put("Rows", "5");
+        properties.put("Columns", "13");
+        assertThrows(IllegalArgumentException.class, () -> new Config(logger, properties));
+    }
 }
\ No newline at end of file
@@ -0,0 +1,103 @@
+package bguspl.set.ex;
+
+import bguspl.set.Config;
+import bguspl.set.Env;
+import bguspl.set.GameThreads;
+import bguspl.set.Journal;
+import bguspl.set.RandomSource;
+import bguspl.set.UserInterfaceHeadless;
+import bguspl.set.UtilImpl;
+import bguspl.set.VirtualClock;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Properties;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ReplayTest {
+
+    @TempDir
+    Path dir;
+
+    /**
+     * Plays a whole game of computer players on a virtual clock, journaling it.
+     *
+     * @return - the journal file.
+     */
+    private Path recordGame() throws InterruptedException {
+        Properties properties = new Properties();
+        properties.put("Rows", "3");
+        properties.put("Columns", "3");
+        properties.put("FeatureSize", "3");
+        properties.put("FeatureCount", "3");
+        properties.put("HumanPlayers", "0");
+        properties.put("ComputerPlayers", "2");
+        properties.put("TurnTimeoutSeconds", "60");
+        properties.put("PointFreezeSeconds", "1");
+        properties.put("PenaltyFreezeSeconds", "3");
+        properties.put("TableDelaySeconds", "0");
+        properties.put("JournalCapacity", "100000");
+        properties.put("RandomSeed", "7");
+        properties.put("VirtualClock", "True");
+        MockLogger logger = new MockLogger();
+        Config config = new Config(logger, properties);
+        RandomSource random = new RandomSource(config);
+        VirtualClock clock = new VirtualClock();
+        Path file = dir.resolve("game.journal");
+        Journal journal = Journal.open(logger, config, file, clock);
+        Env env = new Env(logger, config, new UserInterfaceHeadless(), new UtilImpl(config, random), journal, random,
+                new GameThreads(), clock);
+        Table table = new Table(env);
+        Player[] players = new Player[config.players];
+        Dealer dealer = new Dealer(env, table, players);
+        for (int i = 0; i < players.length; i++)
+            players[i] = new Player(env, dealer, table, i, false);
+
+        Thread dealerThread = new Thread(clock.participant(dealer), "dealer");
+        dealerThread.start();
+        dealerThread.join(30000);
+        if (dealerThread.isAlive()) { // cut the game short rather than hang the build
+            dealer.terminate();
+            dealerThread.join();
+        }
+        journal.close();
+        return file;
+    }
+
+    @Test
+    void replayReachesTheRecordedVerdicts() throws InterruptedException, IOException {
+        Journal.Recording recording = Journal.read(recordGame());
+
+        assertTrue(recording.records.stream().anyMatch(record -> record.event == Journal.Event.VERDICT));
+        assertTrue(new Replay(new MockLogger(), recording).run());
+    }
+
+    @Test
+    void replayDetectsAChangedVerdict() throws InterruptedException, IOException {
+        Path file = recordGame();
+        List<Journal.Record> records = Journal.read(file).records;
+        int index = 0;
+        while (records.get(index).event != Journal.Event.VERDICT)
+            index++;
+        int verdict = records.get(index).b == Journal.VERDICT_POINT ? Journal.VERDICT_PENALTY : Journal.VERDICT_POINT;
+        try (RandomAccessFile out = new RandomAccessFile(file.toFile(), "rw")) {
+            out.seek(Journal.HEADER_SIZE + (long) index * Journal.RECORD_SIZE + 24); // b, the verdict
+            out.writeInt(verdict);
+        }
+
+        assertFalse(new Replay(new MockLogger(), Journal.read(file)).run());
+    }
+
+    static class MockLogger extends Logger {
+        protected MockLogger() {
+            super("", null);
+        }
+    }
+}